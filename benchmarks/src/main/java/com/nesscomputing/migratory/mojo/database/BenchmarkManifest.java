@@ -0,0 +1,70 @@
+package com.nesscomputing.migratory.mojo.database;
+
+import org.apache.commons.configuration.CombinedConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.configuration.tree.OverrideCombiner;
+import org.skife.config.CommonsConfigSource;
+import org.skife.config.ConfigurationObjectFactory;
+
+import com.nesscomputing.migratory.mojo.database.util.InitialConfig;
+
+/**
+ * Builds an in-memory manifest with a given number of databases and wires it into a mojo the same way
+ * {@link AbstractDatabaseMojo#execute()} does, without loading anything or connecting to a database.
+ */
+final class BenchmarkManifest
+{
+    static final int PERSONALITIES = 10;
+
+    private BenchmarkManifest()
+    {
+    }
+
+    static String databaseName(final int index)
+    {
+        return String.format("shard%05d", index);
+    }
+
+    static <T extends AbstractDatabaseMojo> T configure(final T mojo, final int databases) throws Exception
+    {
+        return configure(mojo, createConfiguration(databases));
+    }
+
+    static <T extends AbstractDatabaseMojo> T configure(final T mojo, final Configuration config) throws Exception
+    {
+        mojo.initialConfig = new ConfigurationObjectFactory(new CommonsConfigSource(config)).build(InitialConfig.class);
+        mojo.initialize(config);
+
+        return mojo;
+    }
+
+    static Configuration createConfiguration(final int databases)
+    {
+        final PropertiesConfiguration manifest = new PropertiesConfiguration();
+
+        manifest.addProperty("ness.default.base", "jdbc:h2:mem:%s");
+        manifest.addProperty("ness.default.root_url", "jdbc:h2:mem:root");
+        manifest.addProperty("ness.default.root_user", "root");
+        manifest.addProperty("ness.default.root_password", "");
+        manifest.addProperty("ness.default.user", "user");
+        manifest.addProperty("ness.default.password", "");
+        manifest.addProperty("ness.default.personalities", "common:100");
+
+        for (int i = 0; i < databases; i++) {
+            final String database = databaseName(i);
+            for (int p = 0; p < PERSONALITIES; p++) {
+                manifest.addProperty("ness.db." + database, "personality" + p + ":" + (p % 3));
+            }
+            if (i % 10 == 0) {
+                manifest.addProperty("ness.db." + database + ".user", "user_" + database);
+                manifest.addProperty("ness.db." + database + ".tablespace", "fast_disk");
+            }
+        }
+
+        final CombinedConfiguration config = new CombinedConfiguration(new OverrideCombiner());
+        config.addConfiguration(manifest);
+
+        return config;
+    }
+}
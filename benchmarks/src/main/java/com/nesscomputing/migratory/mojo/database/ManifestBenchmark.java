@@ -0,0 +1,62 @@
+package com.nesscomputing.migratory.mojo.database;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures building the manifest index and database lookups in manifests with many databases.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ManifestBenchmark
+{
+    @Param({"10", "500", "2000"})
+    private int databases;
+
+    private Configuration config;
+    private StatusMojo mojo;
+    private String someDatabases;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        config = BenchmarkManifest.createConfiguration(databases);
+        mojo = BenchmarkManifest.configure(new StatusMojo(), config);
+        someDatabases = BenchmarkManifest.databaseName(0) + "," + BenchmarkManifest.databaseName(databases / 2) + "," + BenchmarkManifest.databaseName(databases - 1);
+    }
+
+    @Benchmark
+    public StatusMojo initialize() throws Exception
+    {
+        return BenchmarkManifest.configure(new StatusMojo(), config);
+    }
+
+    @Benchmark
+    public List<String> getAvailableDatabases()
+    {
+        return mojo.getAvailableDatabases();
+    }
+
+    @Benchmark
+    public List<String> expandAllDatabases() throws Exception
+    {
+        return mojo.expandDatabaseList("all");
+    }
+
+    @Benchmark
+    public List<String> expandSomeDatabases() throws Exception
+    {
+        return mojo.expandDatabaseList(someDatabases);
+    }
+}
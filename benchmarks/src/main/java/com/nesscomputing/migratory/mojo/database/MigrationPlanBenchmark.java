@@ -0,0 +1,54 @@
+package com.nesscomputing.migratory.mojo.database;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.common.collect.Maps;
+import com.nesscomputing.migratory.migration.MigrationPlan;
+
+/**
+ * Measures creating the migration plan for a single database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MigrationPlanBenchmark
+{
+    @Param({"10", "2000"})
+    private int databases;
+
+    private UpgradeMojo mojo;
+    private Map.Entry<String, String> allMigrations;
+    private Map.Entry<String, String> explicitMigrations;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        mojo = BenchmarkManifest.configure(new UpgradeMojo(), databases);
+
+        final String database = BenchmarkManifest.databaseName(databases / 2);
+        allMigrations = Maps.immutableEntry(database, null);
+        explicitMigrations = Maps.immutableEntry(database, "personality1@4/personality2/common@10");
+    }
+
+    @Benchmark
+    public MigrationPlan allPersonalities() throws Exception
+    {
+        return mojo.createMigrationPlan(allMigrations);
+    }
+
+    @Benchmark
+    public MigrationPlan explicitPersonalities() throws Exception
+    {
+        return mojo.createMigrationPlan(explicitMigrations);
+    }
+}
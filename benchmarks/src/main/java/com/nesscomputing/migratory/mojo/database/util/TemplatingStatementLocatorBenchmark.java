@@ -0,0 +1,92 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.lang.reflect.Constructor;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.skife.jdbi.v2.StatementContext;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.nesscomputing.migratory.loader.FileLoader;
+import com.nesscomputing.migratory.loader.JarLoader;
+import com.nesscomputing.migratory.loader.LoaderManager;
+
+/**
+ * Measures rendering of single templates and of templates from a template group. The "cached" variants
+ * use the same attributes for every call, the "render" variants use new attributes for every call and
+ * therefore always render the template.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TemplatingStatementLocatorBenchmark
+{
+    private TemplatingStatementLocator mojoLocator;
+    private TemplatingStatementLocator singleLocator;
+    private StatementContext context;
+
+    private long counter = 0;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        // All templates are loaded from the class path, no remote loader is needed.
+        final LoaderManager loaderManager = new LoaderManager();
+        loaderManager.addLoader(new FileLoader(Charsets.UTF_8));
+        loaderManager.addLoader(new JarLoader(Charsets.UTF_8));
+
+        mojoLocator = new TemplatingStatementLocator("/sql/", loaderManager);
+        singleLocator = new TemplatingStatementLocator("/benchsql/", loaderManager);
+
+        // jDBI creates the statement context internally, it has no public constructor.
+        final Constructor<StatementContext> constructor = StatementContext.class.getDeclaredConstructor(Map.class);
+        constructor.setAccessible(true);
+        context = constructor.newInstance(Maps.<String, Object>newHashMap());
+    }
+
+    @Benchmark
+    public String groupTemplateCached() throws Exception
+    {
+        context.setAttribute("database", "benchmark");
+        context.setAttribute("owner", "benchmark_user");
+        context.setAttribute("tablespace", null);
+        return mojoLocator.locate("#mojo:create_database", context);
+    }
+
+    @Benchmark
+    public String groupTemplateRender() throws Exception
+    {
+        context.setAttribute("database", "benchmark_" + counter++);
+        context.setAttribute("owner", "benchmark_user");
+        context.setAttribute("tablespace", "fast_disk");
+        return mojoLocator.locate("#mojo:create_database", context);
+    }
+
+    @Benchmark
+    public String singleTemplateCached() throws Exception
+    {
+        context.setAttribute("database", "benchmark");
+        return singleLocator.locate("#drop_database", context);
+    }
+
+    @Benchmark
+    public String singleTemplateRender() throws Exception
+    {
+        context.setAttribute("database", "benchmark_" + counter++);
+        return singleLocator.locate("#drop_database", context);
+    }
+
+    @Benchmark
+    public String plainStatement() throws Exception
+    {
+        return mojoLocator.locate("SELECT 1", context);
+    }
+}
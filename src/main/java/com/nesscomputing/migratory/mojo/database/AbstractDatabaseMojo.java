@@ -3,17 +3,22 @@ package com.nesscomputing.migratory.mojo.database;
 import static java.lang.String.format;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.StringReader;
 import java.net.URI;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.configuration.CombinedConfiguration;
 import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.MapConfiguration;
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.commons.configuration.SystemConfiguration;
 import org.apache.commons.configuration.tree.OverrideCombiner;
@@ -32,14 +37,32 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.nesscomputing.migratory.Migratory;
 import com.nesscomputing.migratory.MigratoryConfig;
 import com.nesscomputing.migratory.MigratoryOption;
 import com.nesscomputing.migratory.loader.FileLoader;
 import com.nesscomputing.migratory.loader.HttpLoader;
 import com.nesscomputing.migratory.loader.JarLoader;
 import com.nesscomputing.migratory.loader.LoaderManager;
+import com.nesscomputing.migratory.mojo.database.util.CachingLoader;
 import com.nesscomputing.migratory.mojo.database.util.DBIConfig;
+import com.nesscomputing.migratory.mojo.database.util.DataSourceManager;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseCallback;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseExecutor;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseResult;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseServer;
 import com.nesscomputing.migratory.mojo.database.util.InitialConfig;
+import com.nesscomputing.migratory.mojo.database.util.MetricsCollector;
+import com.nesscomputing.migratory.mojo.database.util.MigrationCatalog;
+import com.nesscomputing.migratory.mojo.database.util.MojoLocator;
+import com.nesscomputing.migratory.mojo.database.util.MojoMigratory;
+import com.nesscomputing.migratory.mojo.database.util.PoolConfig;
+import com.nesscomputing.migratory.mojo.database.util.PrefetchingLoader;
+import com.nesscomputing.migratory.mojo.database.util.ResolvedDBIConfig;
+import com.nesscomputing.migratory.mojo.database.util.ServerThrottle;
 import com.pyx4j.log4j.MavenLogAppender;
 
 public abstract class AbstractDatabaseMojo extends AbstractMojo
@@ -48,6 +71,7 @@ public abstract class AbstractDatabaseMojo extends AbstractMojo
     private static final String [] MUST_NOT_BE_EMPTY = new String [] { "default.base", "default.root_url", "default.root_user", "default.user" };
 
     public static final String MIGRATORY_PROPERTIES_FILE = ".migratory.properties";
+    public static final String MIGRATORY_CACHE_DIR = ".migratory/cache";
 
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractDatabaseMojo.class);
@@ -61,8 +85,20 @@ public abstract class AbstractDatabaseMojo extends AbstractMojo
 
     protected LoaderManager loaderManager;
 
+    private PrefetchingLoader prefetchingLoader;
+
+    private MigrationCatalog migrationCatalog;
+
+    private PoolConfig poolConfig;
+
+    private DataSourceManager dataSourceManager;
+
     protected MigratoryOption [] optionList;
 
+    private DatabaseManifest manifest;
+
+    private final ConcurrentMap<String, DBIConfig> additionalDBIConfigs = Maps.newConcurrentMap();
+
     private void stateCheck()
         throws MojoExecutionException
     {
@@ -72,7 +108,9 @@ public abstract class AbstractDatabaseMojo extends AbstractMojo
         sb.append(initialConfig == null ? "initialConfig is null, " : "");
         sb.append(migratoryConfig == null ? "migratoryConfig is null, " : "");
         sb.append(loaderManager == null ? "loaderManager is null, " : "");
+        sb.append(manifest == null ? "manifest is null, " : "");
         sb.append(optionList == null ? "optionList is null, " : "");
+        sb.append(dataSourceManager == null ? "dataSourceManager is null, " : "");
 
         if (sb.length() > 0) {
             throw new MojoExecutionException(format("Internal error (%s), refusing to run mojo !", sb));
@@ -89,11 +127,47 @@ public abstract class AbstractDatabaseMojo extends AbstractMojo
      */
     private String manifestName = null;
 
+    private String manifestContents = null;
+
     /**
      * @parameter expression="${options}"
      */
     private String options;
 
+    /**
+     * Number of databases that are processed at the same time. Defaults to the number of available processors.
+     *
+     * @parameter expression="${parallelism}"
+     */
+    private Integer parallelism = null;
+
+    /**
+     * Number of databases on the same database server that are processed at the same time. Defaults to the parallelism.
+     * This limits databases, not connections: a database may use several connections at once. The number of open
+     * connections per server is limited by migratory.pool.max-per-server in the manifest.
+     *
+     * @parameter expression="${server.parallelism}"
+     */
+    private Integer serverParallelism = null;
+
+    /**
+     * Lower the number of databases processed at the same time on a database server when its statements get slow
+     * or connections fail, and raise it again while the server keeps up.
+     *
+     * @parameter expression="${adaptive}" default-value="false"
+     */
+    private boolean adaptive = false;
+
+    /**
+     * Write timings for connections, templates, sql file loading, statements and migrations to this file.
+     * Files ending in .csv are written as CSV, everything else as JSON.
+     *
+     * @parameter expression="${migratory.metrics.file}"
+     */
+    private File metricsFile = null;
+
+    protected final MetricsCollector metricsCollector = new MetricsCollector();
+
     @Override
     public final void execute() throws MojoExecutionException, MojoFailureException
     {
@@ -166,6 +240,7 @@ public abstract class AbstractDatabaseMojo extends AbstractMojo
             // Now add the contents of the manifest file to the configuration creating the
             // final configuration for building the sql migration sets.
             //
+            this.manifestContents = contents;
             final PropertiesConfiguration pc = new PropertiesConfiguration();
             pc.load(new StringReader(contents));
             config.addConfiguration(pc);
@@ -174,14 +249,15 @@ public abstract class AbstractDatabaseMojo extends AbstractMojo
                 throw new MojoExecutionException(format("Manifest '%s' is not valid. Refusing to execute!", manifestName));
             }
 
-            this.config = config;
-            this.factory = new ConfigurationObjectFactory(new CommonsConfigSource(config));
-            this.migratoryConfig = factory.build(MigratoryConfig.class);
-            this.loaderManager = createLoaderManager(migratoryConfig);
+            initialize(config);
 
-            LOG.debug("Configuration: {}", this.config);
-
-            this.rootDBIConfig = getDBIConfig(getPropertyName("default.root_"));
+            // All sql files are kept in memory for the run, so databases that share personalities load them only once.
+            this.prefetchingLoader = new PrefetchingLoader(createLoaderManager(migratoryConfig), metricsCollector);
+            this.loaderManager = new LoaderManager();
+            this.loaderManager.addLoader(prefetchingLoader);
+            this.migrationCatalog = new MigrationCatalog();
+            this.poolConfig = factory.build(PoolConfig.class);
+            this.dataSourceManager = new DataSourceManager(poolConfig, metricsCollector);
 
             stateCheck();
 
@@ -194,10 +270,72 @@ public abstract class AbstractDatabaseMojo extends AbstractMojo
             throw new MojoExecutionException("Failure:" ,e);
         }
         finally {
+            if (dataSourceManager != null) {
+                dataSourceManager.close();
+                dataSourceManager = null;
+            }
+            if (metricsFile != null) {
+                try {
+                    metricsCollector.write(metricsFile);
+                    LOG.info("Wrote metrics to {}", metricsFile);
+                }
+                catch (IOException ioe) {
+                    LOG.warn("Could not write metrics to {}: {}", metricsFile, ioe);
+                }
+            }
             MavenLogAppender.endPluginLog(this);
         }
     }
 
+    /**
+     * Builds the final configuration and the manifest index from the combined configuration. The combined
+     * configuration rebuilds its node tree on access, so all values are copied into a flat map first.
+     */
+    void initialize(final Configuration combinedConfig) throws MojoExecutionException
+    {
+        final Map<String, Object> values = Maps.newLinkedHashMap();
+        for (Iterator<?> it = combinedConfig.getKeys(); it.hasNext(); ) {
+            final String key = (String) it.next();
+            values.put(key, combinedConfig.getProperty(key));
+        }
+
+        final MapConfiguration config = new MapConfiguration(values);
+        // Values were already split by the combined configuration.
+        config.setDelimiterParsingDisabled(true);
+
+        this.config = config;
+        this.factory = new ConfigurationObjectFactory(new CommonsConfigSource(config));
+        this.migratoryConfig = factory.build(MigratoryConfig.class);
+
+        LOG.debug("Configuration: {}", this.config);
+
+        this.rootDBIConfig = ResolvedDBIConfig.copyOf(getDBIConfig(getPropertyName("default.root_")));
+        this.manifest = buildManifest();
+    }
+
+    private DatabaseManifest buildManifest() throws MojoExecutionException
+    {
+        final List<String> databases = scanDatabases();
+
+        final Map<String, MigrationInformation> defaultMigrations = Maps.newHashMap();
+        addMigrations(getPropertyName("default.personalities"), defaultMigrations);
+
+        final Map<String, DBIConfig> databaseConfigs = Maps.newHashMap();
+        final Map<String, Map<String, MigrationInformation>> migrations = Maps.newHashMap();
+
+        for (String database : databases) {
+            databaseConfigs.put(database, resolveDBIConfig(database));
+
+            final Map<String, MigrationInformation> availableMigrations = Maps.newHashMap();
+            addMigrations(getPropertyName("db." + database), availableMigrations);
+            availableMigrations.putAll(defaultMigrations);
+            migrations.put(database, availableMigrations);
+        }
+
+        LOG.debug("Manifest contains {} databases", databases.size());
+        return new DatabaseManifest(databases, databaseConfigs, migrations);
+    }
+
     /**
      * Executes this mojo.
      */
@@ -215,52 +353,268 @@ public abstract class AbstractDatabaseMojo extends AbstractMojo
     }
 
     protected DBIConfig getDBIConfigFor(final String database)
+    {
+        DBIConfig dbiConfig = manifest.getDBIConfig(database);
+        if (dbiConfig == null) {
+            // Databases that are not in the manifest are resolved once and then cached for the run.
+            dbiConfig = additionalDBIConfigs.get(database);
+            if (dbiConfig == null) {
+                dbiConfig = resolveDBIConfig(database);
+                final DBIConfig existing = additionalDBIConfigs.putIfAbsent(database, dbiConfig);
+                if (existing != null) {
+                    dbiConfig = existing;
+                }
+            }
+        }
+        return dbiConfig;
+    }
+
+    private DBIConfig resolveDBIConfig(final String database)
     {
         final DBIConfig baseConfig = getDBIConfig(getPropertyName(format("db.%s.", database)));
         final String dbUrl = (baseConfig.getDBUrl() != null)
             ? baseConfig.getDBUrl()
             : String.format(config.getString(getPropertyName("default.base")), database);
 
-        return new DBIConfig() {
-            @Override
-            public String getDBDriverClass() {
-                return baseConfig.getDBDriverClass();
-            }
+        return new ResolvedDBIConfig(baseConfig.getDBDriverClass(),
+                                     dbUrl,
+                                     baseConfig.getDBUser(),
+                                     baseConfig.getDBPassword(),
+                                     baseConfig.getDBTablespace());
+    }
 
-            @Override
-            public String getDBUser() {
-                return baseConfig.getDBUser();
-            }
+    protected DBI getDBIFor(final String database) throws Exception
+    {
+        return getDBIFor(getDBIConfigFor(database));
+    }
 
-            @Override
-            public String getDBPassword() {
-                return baseConfig.getDBPassword();
-            }
+    protected DBI getDBIFor(final DBIConfig dbiConfig) throws Exception
+    {
+        return getDBIFor(dbiConfig, Collections.<String>emptyList());
+    }
+
+    /**
+     * Returns a DBI whose connections run the given statements when they are opened. These connections come from a pool of their own.
+     */
+    protected DBI getDBIFor(final DBIConfig dbiConfig, final List<String> connectionInitSqls) throws Exception
+    {
+        if (dbiConfig.getDBDriverClass() != null) {
+            Class.forName(dbiConfig.getDBDriverClass());
+        }
+
+        final DBI dbi = new DBI(dataSourceManager.getDataSource(dbiConfig.getDBDriverClass(), dbiConfig.getDBUrl(), dbiConfig.getDBUser(), dbiConfig.getDBPassword(), connectionInitSqls));
+        dbi.setTimingCollector(metricsCollector);
+        return dbi;
+    }
+
+    /**
+     * Returns a DBI that connects to the database described by the config, but uses the root user credentials.
+     */
+    protected DBI getRootDBIFor(final DBIConfig dbiConfig) throws Exception
+    {
+        return getRootDBIFor(dbiConfig, Collections.<String>emptyList());
+    }
+
+    /**
+     * Returns a DBI with the root user credentials whose connections run the given statements when they are opened.
+     */
+    protected DBI getRootDBIFor(final DBIConfig dbiConfig, final List<String> connectionInitSqls) throws Exception
+    {
+        if (rootDBIConfig.getDBDriverClass() != null) {
+            Class.forName(rootDBIConfig.getDBDriverClass());
+        }
+
+        final DBI dbi = new DBI(dataSourceManager.getDataSource(rootDBIConfig.getDBDriverClass(), dbiConfig.getDBUrl(), rootDBIConfig.getDBUser(), rootDBIConfig.getDBPassword(), connectionInitSqls));
+        dbi.setTimingCollector(metricsCollector);
+        return dbi;
+    }
+
+    /**
+     * Closes all pooled connections to a database url. DBIs that were handed out for this url must no longer be used.
+     */
+    protected void closeDataSources(final String dbUrl)
+    {
+        dataSourceManager.close(dbUrl);
+    }
+
+    protected PoolConfig getPoolConfig()
+    {
+        return poolConfig;
+    }
 
-            @Override
-            public String getDBUrl() {
-                return dbUrl;
+    protected int getParallelism()
+    {
+        if (parallelism == null || parallelism < 1) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return parallelism;
+    }
+
+    /**
+     * Returns a throttle for the databases on each server, or null if the databases are only limited by the parallelism.
+     */
+    private ServerThrottle createServerThrottle(final Map<String, String> servers)
+    {
+        if (serverParallelism == null && !adaptive) {
+            return null;
+        }
+
+        final int maxPerServer = (serverParallelism == null || serverParallelism < 1) ? getParallelism() : serverParallelism;
+        return new ServerThrottle(servers, maxPerServer, adaptive);
+    }
+
+    /**
+     * Runs the callback for all given databases, using up to {@link #getParallelism()} databases at the same time.
+     */
+    protected <T> Map<String, DatabaseResult<T>> executeForDatabases(final Collection<String> databases, final DatabaseCallback<T> callback)
+        throws InterruptedException
+    {
+        return executeForDatabases(databases, true, callback);
+    }
+
+    /**
+     * Runs the callback for all given databases, using up to {@link #getParallelism()} databases at the same time.
+     * Unless groupLogs is set, the log output of the databases is written right away and interleaves.
+     */
+    protected <T> Map<String, DatabaseResult<T>> executeForDatabases(final Collection<String> databases, final boolean groupLogs, final DatabaseCallback<T> callback)
+        throws InterruptedException
+    {
+        final Map<String, String> dbUrls = Maps.newHashMap();
+        final Map<String, String> servers = Maps.newHashMap();
+        for (String database : databases) {
+            final DBIConfig dbiConfig = manifest.getDBIConfig(database);
+            if (dbiConfig != null) {
+                dbUrls.put(database, dbiConfig.getDBUrl());
+                servers.put(database, DatabaseServer.getServer(dbiConfig.getDBUrl()));
             }
+        }
+
+        final DatabaseExecutor executor = new DatabaseExecutor(this.getClass().getSimpleName(), getParallelism(), groupLogs);
+        final ServerThrottle throttle = createServerThrottle(servers);
+
+        // Spread the work over all servers and close the pools of a database as soon as it is done, so that
+        // each server only holds connections for the databases that are currently worked on.
+        final Map<String, DatabaseResult<T>> results;
+        metricsCollector.setStatementObserver(throttle);
+        try {
+            results = executor.execute(DatabaseServer.interleave(databases, servers), throttle, new DatabaseCallback<T>() {
+                @Override
+                public T withDatabase(final String database) throws Exception
+                {
+                    try {
+                        return callback.withDatabase(database);
+                    }
+                    finally {
+                        final String dbUrl = dbUrls.get(database);
+                        if (dbUrl != null && !dbUrl.equals(rootDBIConfig.getDBUrl())) {
+                            closeDataSources(dbUrl);
+                        }
+                    }
+                }
+            });
+        }
+        finally {
+            metricsCollector.setStatementObserver(null);
+        }
+
+        for (DatabaseResult<T> result : results.values()) {
+            metricsCollector.record(MetricsCollector.DATABASE, result.getDatabase(), this.getClass().getSimpleName(), result.getElapsedMillis() * 1000000L);
+        }
+        return results;
+    }
 
-            @Override
-            public String getDBTablespace() {
-                return baseConfig.getDBTablespace();
+    /**
+     * Logs a summary line for each database and returns the number of failed databases.
+     */
+    protected int logSummary(final String action, final Map<String, ? extends DatabaseResult<?>> results)
+    {
+        int failed = 0;
+
+        for (DatabaseResult<?> result : results.values()) {
+            if (result.isSuccess()) {
+                LOG.info(format("%s '%s': OK (%d ms)", action, result.getDatabase(), result.getElapsedMillis()));
             }
-        };
+            else {
+                LOG.warn(format("%s '%s': FAILED (%d ms): %s", action, result.getDatabase(), result.getElapsedMillis(), result.getException()));
+                failed++;
+            }
+        }
+
+        LOG.info(format("%s: %d database(s) succeeded, %d database(s) failed.", action, results.size() - failed, failed));
+        return failed;
     }
 
-    protected DBI getDBIFor(final String database) throws Exception
+    /**
+     * Returns a Migratory that locates the migrations for its personalities relative to the manifest. The
+     * migrations of each personality are located only once per run and shared between all Migratory instances.
+     */
+    protected Migratory createMigratory(final DBI dbi, final DBI rootDbi)
     {
-        return getDBIFor(getDBIConfigFor(database));
+        final Migratory migratory = new MojoMigratory(migratoryConfig, dbi, rootDbi, loaderManager);
+        migratory.addLocator(migrationCatalog.wrap(new MojoLocator(migratory, manifestUrl)));
+        return migratory;
     }
 
-    protected DBI getDBIFor(final DBIConfig dbiConfig) throws Exception
+    /**
+     * Loads the sql files of all personalities used by the given databases concurrently, before any
+     * database work starts.
+     */
+    protected void prefetchMigrations(final Collection<String> databases) throws MojoExecutionException, InterruptedException
     {
-        if (dbiConfig.getDBDriverClass() != null) {
-            Class.forName(dbiConfig.getDBDriverClass());
+        final Set<String> personalities = Sets.newTreeSet();
+        for (String database : databases) {
+            personalities.addAll(getAvailableMigrations(database).keySet());
+        }
+
+        final List<Map.Entry<URI, String>> folderLocations = Lists.newArrayListWithCapacity(personalities.size());
+        for (String personality : personalities) {
+            folderLocations.add(MojoLocator.getBaseInformation(manifestUrl, personality));
+        }
+
+        LOG.debug("Prefetching sql files for {}", personalities);
+        prefetchingLoader.prefetch(folderLocations, getParallelism());
+    }
+
+    /**
+     * Returns a hash over the locations and contents of all sql files of the given personalities.
+     */
+    protected String getMigrationsFingerprint(final Collection<String> personalities)
+    {
+        final Hasher hasher = Hashing.sha1().newHasher();
+
+        for (String personality : Sets.newTreeSet(personalities)) {
+            final Map.Entry<URI, String> baseInformation = MojoLocator.getBaseInformation(manifestUrl, personality);
+            putString(hasher, personality);
+
+            final Collection<URI> uris = loaderManager.loadFolder(baseInformation.getKey(), baseInformation.getValue());
+            if (uris == null) {
+                continue;
+            }
+
+            for (URI uri : Sets.newTreeSet(uris)) {
+                putString(hasher, uri.toString());
+                putString(hasher, StringUtils.defaultString(loaderManager.loadFile(uri)));
+            }
         }
+        return hasher.hash().toString();
+    }
 
-        return new DBI(dbiConfig.getDBUrl(), dbiConfig.getDBUser(), dbiConfig.getDBPassword());
+    /**
+     * Returns a hash over the manifest and all sql files of the given personalities.
+     */
+    protected String getManifestFingerprint(final Collection<String> personalities)
+    {
+        final Hasher hasher = Hashing.sha1().newHasher();
+        putString(hasher, StringUtils.defaultString(manifestContents));
+        putString(hasher, getMigrationsFingerprint(personalities));
+        return hasher.hash().toString();
+    }
+
+    private static void putString(final Hasher hasher, final String value)
+    {
+        final byte [] bytes = value.getBytes(Charsets.UTF_8);
+        hasher.putInt(bytes.length);
+        hasher.putBytes(bytes);
     }
 
     protected List<String> expandDatabaseList(final String databases) throws MojoExecutionException
@@ -270,14 +624,12 @@ public abstract class AbstractDatabaseMojo extends AbstractMojo
             return  Collections.<String>emptyList();
         }
 
-        final List<String> availableDatabases = getAvailableDatabases();
-
         if (databaseNames.length == 1 && databaseNames[0].equalsIgnoreCase("all")) {
-            return availableDatabases;
+            return getAvailableDatabases();
         }
         else {
             for (String database : databaseNames) {
-                if (!availableDatabases.contains(database)) {
+                if (!manifest.containsDatabase(database)) {
                     throw new MojoExecutionException("Database " + database + " is unknown!");
                 }
             }
@@ -287,6 +639,16 @@ public abstract class AbstractDatabaseMojo extends AbstractMojo
     }
 
     protected List<String> getAvailableDatabases()
+    {
+        return manifest.getDatabases();
+    }
+
+    protected boolean isAvailableDatabase(final String database)
+    {
+        return manifest.containsDatabase(database);
+    }
+
+    private List<String> scanDatabases()
     {
         final List<String> databaseList = Lists.newArrayList();
 
@@ -322,12 +684,83 @@ public abstract class AbstractDatabaseMojo extends AbstractMojo
 
     protected Map<String, MigrationInformation> getAvailableMigrations(final String database) throws MojoExecutionException
     {
-        final Map<String, MigrationInformation> availableMigrations = Maps.newHashMap();
+        final Map<String, MigrationInformation> availableMigrations = manifest.getMigrations(database);
+        if (availableMigrations == null) {
+            throw new MojoExecutionException("Database " + database + " is unknown!");
+        }
+        return availableMigrations;
+    }
 
-        addMigrations(getPropertyName("db." + database), availableMigrations);
-        addMigrations(getPropertyName("default.personalities"), availableMigrations);
+    protected Map<String, String> extractDatabases(final String migrations)throws MojoExecutionException
+    {
+        String [] migrationNames = StringUtils.stripAll(StringUtils.split(migrations, ","));
 
-        return availableMigrations;
+        final List<String> availableDatabases = getAvailableDatabases();
+
+        if (migrationNames == null) {
+            return  Collections.<String, String>emptyMap();
+        }
+
+        final Map<String, String> databases = Maps.newLinkedHashMap();
+
+        if (migrationNames.length == 1 && migrationNames[0].equalsIgnoreCase("all")) {
+            migrationNames = availableDatabases.toArray(new String[availableDatabases.size()]);
+        }
+
+        for (String migration : migrationNames) {
+            final String [] migrationFields = StringUtils.stripAll(StringUtils.split(migration, "="));
+
+            if (migrationFields == null || migrationFields.length < 1 || migrationFields.length > 2) {
+                throw new MojoExecutionException("Migration " + migration + " is invalid.");
+            }
+
+            if (!isAvailableDatabase(migrationFields[0])) {
+                throw new MojoExecutionException("Database " + migrationFields[0] + " is unknown!");
+            }
+
+            databases.put(migrationFields[0], (migrationFields.length == 1 ? null : migrationFields[1]));
+        }
+
+        return databases;
+    }
+
+    protected List<PlannedMigration> getPlannedMigrations(final Map.Entry<String, String> database) throws MojoExecutionException
+    {
+        final Map<String, MigrationInformation> availableMigrations = getAvailableMigrations(database.getKey());
+
+        final List<PlannedMigration> plannedMigrations = Lists.newArrayList();
+
+        // Do we have any special migrations given?
+        final String migrations = database.getValue();
+        if (StringUtils.isEmpty(migrations)) {
+            for (MigrationInformation availableMigration : availableMigrations.values()) {
+                plannedMigrations.add(new PlannedMigration(availableMigration.getName(), Integer.MAX_VALUE, availableMigration.getPriority()));
+            }
+
+            return plannedMigrations; // No
+        }
+
+        final String [] migrationNames = StringUtils.stripAll(StringUtils.split(migrations, "/"));
+
+        for (String migrationName : migrationNames) {
+            final String [] migrationFields = StringUtils.stripAll(StringUtils.split(migrationName, "@"));
+
+            if (migrationFields == null || migrationFields.length < 1 || migrationFields.length > 2) {
+                throw new MojoExecutionException("Migration " + migrationName + " is invalid.");
+            }
+
+            int targetVersion = migrationFields.length == 2 ? Integer.parseInt(migrationFields[1], 10) : Integer.MAX_VALUE;
+
+            MigrationInformation migrationInformation = availableMigrations.get(migrationFields[0]);
+
+            if (migrationInformation == null) {
+                throw new MojoExecutionException("Migration " + migrationName + " is unknown!");
+            }
+
+            plannedMigrations.add(new PlannedMigration(migrationInformation.getName(), targetVersion, migrationInformation.getPriority()));
+        }
+
+        return plannedMigrations;
     }
 
     protected void addMigrations(final String property, final Map<String, MigrationInformation> availableMigrations) throws MojoExecutionException
@@ -371,6 +804,35 @@ public abstract class AbstractDatabaseMojo extends AbstractMojo
         }
     }
 
+    protected static class PlannedMigration
+    {
+        private final String name;
+        private final int targetVersion;
+        private final int priority;
+
+        public PlannedMigration(final String name, final int targetVersion, final int priority)
+        {
+            this.name = name;
+            this.targetVersion = targetVersion;
+            this.priority = priority;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public int getTargetVersion()
+        {
+            return targetVersion;
+        }
+
+        public int getPriority()
+        {
+            return priority;
+        }
+    }
+
     private boolean validateConfiguration(Configuration config) throws MojoExecutionException
     {
         boolean valid = true;
@@ -406,6 +868,30 @@ public abstract class AbstractDatabaseMojo extends AbstractMojo
         loaderManager.addLoader(new JarLoader(Charsets.UTF_8));
         loaderManager.addLoader(new HttpLoader(migratoryConfig));
 
-        return loaderManager;
+        final File cacheDir = getCacheDir();
+        if (cacheDir == null) {
+            return loaderManager;
+        }
+
+        final LoaderManager cachingLoaderManager = new LoaderManager();
+        cachingLoaderManager.addLoader(new CachingLoader(loaderManager, cacheDir, initialConfig.isOffline(), migratoryConfig.getHttpLogin(), migratoryConfig.getHttpPassword()));
+        return cachingLoaderManager;
+    }
+
+    /**
+     * Returns the local cache directory or null if caching is disabled.
+     */
+    protected File getCacheDir()
+    {
+        if (!initialConfig.isCacheEnabled() && !initialConfig.isOffline()) {
+            return null;
+        }
+
+        if (initialConfig.getCacheDir() != null) {
+            return new File(initialConfig.getCacheDir());
+        }
+
+        final String userHome = System.getProperty("user.home");
+        return (userHome == null) ? null : new File(userHome, MIGRATORY_CACHE_DIR);
     }
 }
@@ -1,6 +1,7 @@
 package com.nesscomputing.migratory.mojo.database;
 
 import java.util.List;
+import java.util.Map;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.skife.jdbi.v2.DBI;
@@ -9,7 +10,11 @@ import org.slf4j.LoggerFactory;
 
 import com.nesscomputing.migratory.Migratory;
 import com.nesscomputing.migratory.MigratoryException;
+import com.nesscomputing.migratory.MigratoryOption;
 import com.nesscomputing.migratory.mojo.database.util.DBIConfig;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseCallback;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseResult;
+import com.nesscomputing.migratory.mojo.database.util.TemplatingStatementLocator;
 
 
 /**
@@ -29,6 +34,14 @@ public class CleanMojo extends AbstractDatabaseMojo
      */
     private String databases;
 
+    /**
+     * Terminate all other sessions connected to a database before cleaning it, so that no lock held by an idle
+     * session blocks dropping its objects. Requires Postgres 9.2 or later.
+     *
+     * @parameter expression="${terminate}" default-value="false"
+     */
+    private boolean terminate = false;
+
     @Override
     protected void doExecute() throws Exception
     {
@@ -39,25 +52,45 @@ public class CleanMojo extends AbstractDatabaseMojo
             throw new MojoExecutionException("No permission to run this task!");
         }
 
-        for (String database : databaseList) {
-            LOG.info("Cleaning Database {}...", database);
+        final DBI rootDbi;
+        if (terminate) {
+            rootDbi = getDBIFor(rootDBIConfig);
+            rootDbi.setStatementLocator(new TemplatingStatementLocator("/sql/", loaderManager, metricsCollector));
+        }
+        else {
+            rootDbi = null;
+        }
+
+        final Map<String, DatabaseResult<Void>> results = executeForDatabases(databaseList, new DatabaseCallback<Void>() {
+            @Override
+            public Void withDatabase(final String database) throws Exception
+            {
+                LOG.info("Cleaning Database {}...", database);
 
-            final DBIConfig databaseConfig = getDBIConfigFor(database);
-            final DBI rootDbDbi = new DBI(databaseConfig.getDBUrl(), rootDBIConfig.getDBUser(), rootDBIConfig.getDBPassword());
-            final DBI dbi = getDBIFor(database);
+                final DBIConfig databaseConfig = getDBIConfigFor(database);
+                final DBI rootDbDbi = getRootDBIFor(databaseConfig);
+                final DBI dbi = getDBIFor(database);
+
+                if (rootDbi != null && !MigratoryOption.containsOption(MigratoryOption.DRY_RUN, optionList)) {
+                    DropMojo.terminateBackends(rootDbi, database);
+                }
 
-            try {
                 final Migratory migratory = new Migratory(migratoryConfig, dbi, rootDbDbi);
                 migratory.dbClean(optionList);
+
+                LOG.info("... done");
+                return null;
             }
-            catch (MigratoryException me) {
-                LOG.warn("While cleaning {}: {}", database, me);
-            }
-            catch (RuntimeException re) {
-                LOG.warn("While cleaning {}: {}", database, re);
-            }
+        });
+
+        logSummary("Clean", results);
 
-            LOG.info("... done");
+        for (DatabaseResult<Void> result : results.values()) {
+            // Migratory and database problems have been reported above, everything else fails the build.
+            final Exception e = result.getException();
+            if (e != null && !(e instanceof MigratoryException || e instanceof RuntimeException)) {
+                throw new MojoExecutionException(String.format("While cleaning '%s'", result.getDatabase()), e);
+            }
         }
     }
 }
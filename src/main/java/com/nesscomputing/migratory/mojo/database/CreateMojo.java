@@ -1,21 +1,30 @@
 package com.nesscomputing.migratory.mojo.database;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionStatus;
 import org.skife.jdbi.v2.exceptions.DBIException;
 import org.skife.jdbi.v2.tweak.HandleCallback;
 import org.skife.jdbi.v2.tweak.StatementLocator;
 import org.skife.jdbi.v2.util.IntegerMapper;
+import org.skife.jdbi.v2.util.StringMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Maps;
 import com.nesscomputing.migratory.Migratory;
 import com.nesscomputing.migratory.MigratoryException;
 import com.nesscomputing.migratory.MigratoryOption;
+import com.nesscomputing.migratory.migration.MigrationPlan;
 import com.nesscomputing.migratory.mojo.database.util.DBIConfig;
+import com.nesscomputing.migratory.mojo.database.util.MetricsCollector;
 import com.nesscomputing.migratory.mojo.database.util.TemplatingStatementLocator;
 
 
@@ -30,12 +39,32 @@ public class CreateMojo extends AbstractDatabaseMojo
 {
     private static final Logger LOG = LoggerFactory.getLogger(CreateMojo.class);
 
+    private static final String SNAPSHOT_PREFIX = "migratory snapshot ";
+
     /**
      * @parameter expression="${databases}"
      * @required
      */
     private String databases;
 
+    /**
+     * Run all provisioning steps for a database on one connection to the root database and one connection to
+     * the new database, detecting all existing objects with a single query each.
+     *
+     * @parameter expression="${batch}" default-value="false"
+     */
+    private boolean batch = false;
+
+    /**
+     * Name of a "golden" database from the manifest. If set, this database is created and migrated to the
+     * latest version first, and all other databases are created as copies of it. The template database is
+     * stamped with a hash of the manifest and the sql files. It is reused as long as they do not change and
+     * dropped and rebuilt otherwise.
+     *
+     * @parameter expression="${template}"
+     */
+    private String template = null;
+
     @Override
     protected void doExecute() throws Exception
     {
@@ -48,20 +77,29 @@ public class CreateMojo extends AbstractDatabaseMojo
 
         final DBI rootDbi = getDBIFor(rootDBIConfig);
 
-        final StatementLocator statementLocator = new TemplatingStatementLocator("/sql/", loaderManager);
+        final StatementLocator statementLocator = new TemplatingStatementLocator("/sql/", loaderManager, metricsCollector);
         rootDbi.setStatementLocator(statementLocator);
 
+        if (template != null) {
+            createFromTemplate(rootDbi, statementLocator, databaseList);
+            return;
+        }
+
         for (final String database : databaseList) {
             final DBIConfig databaseConfig = getDBIConfigFor(database);
             final String user = databaseConfig.getDBUser();
 
             // Language and schema creation runs as root user, but connected to the actual database.
-            final DBI rootDbDbi = new DBI(databaseConfig.getDBUrl(), rootDBIConfig.getDBUser(), rootDBIConfig.getDBPassword());
+            final DBI rootDbDbi = getRootDBIFor(databaseConfig);
             rootDbDbi.setStatementLocator(statementLocator);
 
             if (MigratoryOption.containsOption(MigratoryOption.DRY_RUN, optionList)) {
                 LOG.info("Dry run for database {} activated!", database);
             }
+            else if (batch) {
+                provisionDatabase(rootDbi, rootDbDbi, database, databaseConfig);
+                initializeMetadata(database);
+            }
             else {
                 // User and Database creation runs as root user connected to the root db
                 try {
@@ -241,25 +279,312 @@ public class CreateMojo extends AbstractDatabaseMojo
                 }
 
 
-                try {
-                    LOG.info("... initializing metadata ...");
+                initializeMetadata(database);
+            }
+            LOG.info("... done");
+        }
+    }
 
-                    // Finally metadata is created as the database owner connected to the database.
+    /**
+     * Creates and migrates the template database, then creates all other databases with the template database
+     * as their template. Postgres copies the template on the file level, so no DDL is replayed for the copies.
+     */
+    private void createFromTemplate(final DBI rootDbi, final StatementLocator statementLocator, final List<String> databaseList)
+        throws Exception
+    {
+        if (!isAvailableDatabase(template)) {
+            throw new MojoExecutionException("Template database " + template + " is unknown!");
+        }
 
-                    final DBI dbi = getDBIFor(database);
+        final DBIConfig templateConfig = getDBIConfigFor(template);
 
-                    Migratory migratory = new Migratory(migratoryConfig, dbi);
-                    migratory.dbInit();
-                }
-                catch (DBIException de) {
-                    LOG.warn("While creating {}: {}", database, de);
+        // All objects of a copy are owned by the owner of the template, so a copy can only be used by the same user.
+        final Map<String, DBIConfig> databaseConfigs = Maps.newLinkedHashMap();
+        for (String database : databaseList) {
+            if (database.equals(template)) {
+                continue;
+            }
+            final DBIConfig databaseConfig = getDBIConfigFor(database);
+            if (!StringUtils.equals(databaseConfig.getDBUser(), templateConfig.getDBUser())) {
+                throw new MojoExecutionException(String.format("Database %s belongs to %s, but template database %s belongs to %s!",
+                                                               database, databaseConfig.getDBUser(), template, templateConfig.getDBUser()));
+            }
+            databaseConfigs.put(database, databaseConfig);
+        }
+
+        if (MigratoryOption.containsOption(MigratoryOption.DRY_RUN, optionList)) {
+            LOG.info("Dry run for template {} and databases {} activated!", template, databaseConfigs.keySet());
+            return;
+        }
+
+        final String snapshot = SNAPSHOT_PREFIX + getManifestFingerprint(getAvailableMigrations(template).keySet());
+        final String existingSnapshot = rootDbi.withHandle(new HandleCallback<String>() {
+            @Override
+            public String withHandle(final Handle handle) {
+                return handle.createQuery("#mojo:detect_database_comment")
+                .bind("database", template)
+                .map(StringMapper.FIRST)
+                .first();
+            }
+        });
+
+        if (snapshot.equals(existingSnapshot)) {
+            LOG.info("Template database {} matches the current manifest and sql files, not migrating.", template);
+        }
+        else {
+            if (existingSnapshot != null && existingSnapshot.startsWith(SNAPSHOT_PREFIX)) {
+                // Built for different sql files, those may have been changed in place. Start over.
+                LOG.info("Dropping outdated template database {} ...", template);
+                closeDataSources(templateConfig.getDBUrl());
+                rootDbi.withHandle(new HandleCallback<Void>() {
+                    @Override
+                    public Void withHandle(final Handle handle) {
+                        handle.createStatement("#mojo:drop_database")
+                        .define("database", template)
+                        .execute();
+                        return null;
+                    }
+                });
+            }
+
+            // Only created after the drop, which closes all pools for the template database.
+            final DBI rootTemplateDbi = getRootDBIFor(templateConfig);
+            rootTemplateDbi.setStatementLocator(statementLocator);
+
+            LOG.info("Creating template database {} ...", template);
+            provisionDatabase(rootDbi, rootTemplateDbi, template, templateConfig);
+            initializeMetadata(template);
+
+            final MigrationPlan migrationPlan = new MigrationPlan();
+            for (MigrationInformation migrationInformation : getAvailableMigrations(template).values()) {
+                migrationPlan.addMigration(migrationInformation.getName(), Integer.MAX_VALUE, migrationInformation.getPriority());
+            }
+
+            if (!migrationPlan.isEmpty()) {
+                LOG.info("... migrating template database {} ...", template);
+                prefetchMigrations(Collections.singleton(template));
+
+                final long startTime = System.nanoTime();
+                final Migratory migratory = createMigratory(getDBIFor(templateConfig), rootTemplateDbi);
+                migratory.dbMigrate(migrationPlan, optionList);
+                metricsCollector.record(MetricsCollector.MIGRATION, "template " + template, System.nanoTime() - startTime);
+            }
+
+            // Only stamped after a successful migration, a failed run is rebuilt the next time.
+            rootDbi.withHandle(new HandleCallback<Void>() {
+                @Override
+                public Void withHandle(final Handle handle) {
+                    handle.createStatement("#mojo:comment_database")
+                    .define("database", template)
+                    .define("comment", snapshot)
+                    .execute();
+                    return null;
                 }
-                catch (MigratoryException me) {
-                    LOG.warn("While creating {}: {}", database, me);
+            });
+        }
+
+        // Postgres refuses to copy a database that has open connections, including the idle ones in our own pools.
+        closeDataSources(templateConfig.getDBUrl());
+
+        rootDbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) {
+                for (Map.Entry<String, DBIConfig> entry : databaseConfigs.entrySet()) {
+                    try {
+                        cloneDatabase(handle, entry.getKey(), entry.getValue());
+                    }
+                    catch (DBIException de) {
+                        LOG.warn("While creating {}: {}", entry.getKey(), de);
+                    }
                 }
+                return null;
             }
-            LOG.info("... done");
+        });
+        LOG.info("... done");
+    }
+
+    private void cloneDatabase(final Handle handle, final String database, final DBIConfig databaseConfig)
+    {
+        final Map<String, Object> detected = handle.createQuery("#mojo:detect_database_objects")
+        .bind("user", databaseConfig.getDBUser())
+        .bind("database", database)
+        .bind("table_space", databaseConfig.getDBTablespace())
+        .first();
+
+        if (exists(detected, "database_count")) {
+            LOG.info("... Database {} already exists ...", database);
+            return;
+        }
+
+        final String tablespace;
+        if (databaseConfig.getDBTablespace() == null) {
+            tablespace = null;
+        }
+        else if (exists(detected, "tablespace_count")) {
+            tablespace = databaseConfig.getDBTablespace();
+        }
+        else {
+            LOG.warn("Tablespace '" + databaseConfig.getDBTablespace() + "' does not exist, falling back to default!");
+            tablespace = null;
+        }
+
+        LOG.info("... creating Database {} from {} ...", database, template);
+
+        final long startTime = System.nanoTime();
+        handle.createStatement("#mojo:create_database")
+        .define("database", database)
+        .define("owner", databaseConfig.getDBUser())
+        .define("tablespace", tablespace)
+        .define("template", template)
+        .execute();
+        metricsCollector.record(MetricsCollector.MIGRATION, "copy of " + template, System.nanoTime() - startTime);
+    }
+
+    private void initializeMetadata(final String database) throws Exception
+    {
+        try {
+            LOG.info("... initializing metadata ...");
+
+            // Finally metadata is created as the database owner connected to the database.
+
+            final DBI dbi = getDBIFor(database);
+
+            Migratory migratory = new Migratory(migratoryConfig, dbi);
+            migratory.dbInit();
+        }
+        catch (DBIException de) {
+            LOG.warn("While creating {}: {}", database, de);
+        }
+        catch (MigratoryException me) {
+            LOG.warn("While creating {}: {}", database, me);
+        }
+    }
+
+    /**
+     * Creates user, database, language and schemas using one handle on the root database and one handle on the
+     * new database. The existing objects are detected with a single catalog query per handle.
+     */
+    private void provisionDatabase(final DBI rootDbi, final DBI rootDbDbi, final String database, final DBIConfig databaseConfig)
+    {
+        final String user = databaseConfig.getDBUser();
+
+        // User and Database creation runs as root user connected to the root db. CREATE DATABASE can not
+        // run inside a transaction, so this handle runs in autocommit mode.
+        try {
+            rootDbi.withHandle(new HandleCallback<Void>() {
+                @Override
+                public Void withHandle(final Handle handle) {
+                    final Map<String, Object> detected = handle.createQuery("#mojo:detect_database_objects")
+                    .bind("user", user)
+                    .bind("database", database)
+                    .bind("table_space", databaseConfig.getDBTablespace())
+                    .first();
+
+                    if (exists(detected, "user_count")) {
+                        LOG.trace("... User {} already exists ...", user);
+                    }
+                    else {
+                        LOG.info("... creating User {} ...", user);
+                        handle.createStatement("#mojo:create_user")
+                        .define("user", user)
+                        .define("password", databaseConfig.getDBPassword())
+                        .execute();
+                    }
+
+                    if (exists(detected, "database_count")) {
+                        LOG.info("... Database {} already exists ...", database);
+                    }
+                    else {
+                        LOG.info("... creating Database {}...", database);
+
+                        final String tablespace;
+                        if (databaseConfig.getDBTablespace() == null) {
+                            tablespace = null;
+                        }
+                        else if (exists(detected, "tablespace_count")) {
+                            tablespace = databaseConfig.getDBTablespace();
+                        }
+                        else {
+                            LOG.warn("Tablespace '" + databaseConfig.getDBTablespace() + "' does not exist, falling back to default!");
+                            tablespace = null;
+                        }
+
+                        handle.createStatement("#mojo:create_database")
+                        .define("database", database)
+                        .define("owner", user)
+                        .define("tablespace", tablespace)
+                        .execute();
+                    }
+                    return null;
+                }
+            });
         }
+        catch (DBIException de) {
+            LOG.warn("While creating {}: {}", database, de);
+        }
+
+        // Language and schema creation runs as root user, but connected to the actual database. All
+        // of these are transactional, so either all of them are applied or none.
+        final boolean createSchema = config.getBoolean(getPropertyName("schema.create"), false);
+        final boolean enforceSchema = config.getBoolean(getPropertyName("schema.enforce"), false);
+        final String schemaName = user;
+
+        try {
+            rootDbDbi.inTransaction(new TransactionCallback<Void>() {
+                @Override
+                public Void inTransaction(final Handle handle, final TransactionStatus status) {
+                    final Map<String, Object> detected = handle.createQuery("#mojo:detect_schema_objects")
+                    .bind("schema_name", schemaName)
+                    .first();
+
+                    if (exists(detected, "language_count")) {
+                        LOG.trace("Language plpgsql exists");
+                    }
+                    else {
+                        LOG.info("... creating plpgsql language...");
+                        handle.createStatement("#mojo:create_language")
+                        .execute();
+                    }
+
+                    if (!createSchema) {
+                        LOG.info("... not creating schema ...");
+                        return null;
+                    }
+
+                    if (exists(detected, "schema_count")) {
+                        LOG.trace("Schema {} exists", schemaName);
+                    }
+                    else {
+                        LOG.info("... creating Schema {} ...", schemaName);
+                        handle.createStatement("#mojo:create_schema")
+                        .define("schema_name", schemaName)
+                        .execute();
+                    }
+
+                    if (enforceSchema) {
+                        if (!exists(detected, "public_count")) {
+                            LOG.trace("public schema does not exist");
+                        }
+                        else {
+                            LOG.info("... dropping public schema ...");
+                            handle.createStatement("#mojo:drop_schema")
+                            .define("schema_name", "public")
+                            .execute();
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        catch (DBIException de) {
+            LOG.warn("While creating {}: {}", database, de);
+        }
+    }
+
+    private static boolean exists(final Map<String, Object> detected, final String column)
+    {
+        final Object count = detected.get(column);
+        return count != null && ((Number) count).longValue() != 0;
     }
 
     private boolean detectSchema(final DBI dbi, final String schemaName)
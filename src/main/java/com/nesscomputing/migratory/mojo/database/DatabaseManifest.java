@@ -0,0 +1,67 @@
+package com.nesscomputing.migratory.mojo.database;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.nesscomputing.migratory.mojo.database.AbstractDatabaseMojo.MigrationInformation;
+import com.nesscomputing.migratory.mojo.database.util.DBIConfig;
+
+/**
+ * Immutable view of all databases in the manifest, with their connection settings and personalities.
+ * Built once when the mojo starts, all lookups afterwards are map lookups.
+ */
+public final class DatabaseManifest
+{
+    private final List<String> databases;
+    private final Set<String> databaseNames;
+    private final Map<String, DBIConfig> databaseConfigs;
+    private final Map<String, Map<String, MigrationInformation>> migrations;
+
+    DatabaseManifest(final List<String> databases,
+                     final Map<String, DBIConfig> databaseConfigs,
+                     final Map<String, Map<String, MigrationInformation>> migrations)
+    {
+        this.databases = ImmutableList.copyOf(databases);
+        this.databaseNames = ImmutableSet.copyOf(databases);
+        this.databaseConfigs = ImmutableMap.copyOf(databaseConfigs);
+
+        final ImmutableMap.Builder<String, Map<String, MigrationInformation>> builder = ImmutableMap.builder();
+        for (Map.Entry<String, Map<String, MigrationInformation>> entry : migrations.entrySet()) {
+            builder.put(entry.getKey(), ImmutableMap.copyOf(entry.getValue()));
+        }
+        this.migrations = builder.build();
+    }
+
+    /**
+     * All databases, in manifest order.
+     */
+    public List<String> getDatabases()
+    {
+        return databases;
+    }
+
+    public boolean containsDatabase(final String database)
+    {
+        return databaseNames.contains(database);
+    }
+
+    /**
+     * Returns the connection settings for a database or null if the database is not in the manifest.
+     */
+    public DBIConfig getDBIConfig(final String database)
+    {
+        return databaseConfigs.get(database);
+    }
+
+    /**
+     * Returns the personalities of a database, keyed by name, or null if the database is not in the manifest.
+     */
+    public Map<String, MigrationInformation> getMigrations(final String database)
+    {
+        return migrations.get(database);
+    }
+}
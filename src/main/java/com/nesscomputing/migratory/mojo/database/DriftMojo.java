@@ -0,0 +1,163 @@
+package com.nesscomputing.migratory.mojo.database;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.skife.jdbi.v2.tweak.StatementLocator;
+import org.skife.jdbi.v2.util.StringMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.nesscomputing.migratory.mojo.database.util.DBIConfig;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseCallback;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseResult;
+import com.nesscomputing.migratory.mojo.database.util.TemplatingStatementLocator;
+
+
+/**
+ * Maven goal to find databases whose schema differs from the other databases. Fingerprints the tables,
+ * columns, indexes and constraints of each database and reports all databases that are not in the largest
+ * group of identical fingerprints.
+ *
+ * @aggregator true
+ * @requiresProject false
+ * @goal drift
+ */
+public class DriftMojo extends AbstractDatabaseMojo
+{
+    private static final Logger LOG = LoggerFactory.getLogger(DriftMojo.class);
+
+    /**
+     * @parameter expression="${databases}" default-value="all"
+     */
+    private String databases = "all";
+
+    /**
+     * Fail the build if not all databases have the same schema.
+     *
+     * @parameter expression="${failOnDrift}" default-value="false"
+     */
+    private boolean failOnDrift = false;
+
+    @Override
+    protected void doExecute() throws Exception
+    {
+        final List<String> databaseList = expandDatabaseList(databases);
+
+        final boolean permission = config.getBoolean(getPropertyName("permission.drift-db"), true);
+        if (!permission) {
+            throw new MojoExecutionException("No permission to run this task!");
+        }
+
+        // Configuration is resolved up front, the workers only talk to the databases.
+        final Map<String, DBIConfig> databaseConfigs = Maps.newHashMap();
+        for (String database : databaseList) {
+            databaseConfigs.put(database, getDBIConfigFor(database));
+        }
+
+        final StatementLocator statementLocator = new TemplatingStatementLocator("/sql/", loaderManager, metricsCollector);
+
+        final Map<String, DatabaseResult<String>> results = executeForDatabases(databaseList, new DatabaseCallback<String>() {
+            @Override
+            public String withDatabase(final String database) throws Exception
+            {
+                final DBI dbi = getDBIFor(databaseConfigs.get(database));
+                dbi.setStatementLocator(statementLocator);
+
+                return dbi.withHandle(new HandleCallback<String>() {
+                    @Override
+                    public String withHandle(final Handle handle) {
+                        return handle.createQuery("#mojo:catalog_fingerprint")
+                        .map(StringMapper.FIRST)
+                        .first();
+                    }
+                });
+            }
+        });
+
+        final Map<String, SortedSet<String>> groups = Maps.newHashMap();
+
+        for (DatabaseResult<String> result : new TreeMap<String, DatabaseResult<String>>(results).values()) {
+            final String database = result.getDatabase();
+            final Exception e = result.getException();
+
+            if (e == null) {
+                SortedSet<String> group = groups.get(result.getValue());
+                if (group == null) {
+                    group = Sets.newTreeSet();
+                    groups.put(result.getValue(), group);
+                }
+                group.add(database);
+            }
+            else if (e instanceof RuntimeException) {
+                LOG.warn("While fingerprinting {}: {}", database, e);
+            }
+            else {
+                throw e;
+            }
+        }
+
+        if (groups.isEmpty()) {
+            return;
+        }
+
+        // Largest group first, ties are broken by the name of the first database.
+        final List<Map.Entry<String, SortedSet<String>>> sortedGroups = Lists.newArrayList(groups.entrySet());
+        Collections.sort(sortedGroups, new Comparator<Map.Entry<String, SortedSet<String>>>() {
+            @Override
+            public int compare(final Map.Entry<String, SortedSet<String>> a, final Map.Entry<String, SortedSet<String>> b)
+            {
+                final int sizeA = a.getValue().size();
+                final int sizeB = b.getValue().size();
+                if (sizeA != sizeB) {
+                    return sizeA > sizeB ? -1 : 1;
+                }
+                return a.getValue().first().compareTo(b.getValue().first());
+            }
+        });
+
+        LOG.info(FRAME);
+        LOG.info(HEADER);
+        LOG.info(FRAME);
+
+        for (int i = 0; i < sortedGroups.size(); i++) {
+            final Map.Entry<String, SortedSet<String>> group = sortedGroups.get(i);
+            final String state = (i == 0) ? "MAIN" : "DRIFT";
+            for (String database : group.getValue()) {
+                LOG.info(String.format(BODY, database, state, group.getKey()));
+            }
+            LOG.info(FRAME);
+        }
+
+        if (sortedGroups.size() > 1) {
+            int drifted = 0;
+            for (Map.Entry<String, SortedSet<String>> group : sortedGroups.subList(1, sortedGroups.size())) {
+                drifted += group.getValue().size();
+            }
+
+            final String message = String.format("%d of %d databases differ from the schema of %s!", drifted, databaseList.size(), sortedGroups.get(0).getValue().first());
+            if (failOnDrift) {
+                throw new MojoExecutionException(message);
+            }
+            LOG.warn(message);
+        }
+        else {
+            LOG.info("All {} databases have the same schema.", sortedGroups.get(0).getValue().size());
+        }
+    }
+
+    private static final String FRAME  = "+---------------------------+-------+--------------------------------------------+";
+    private static final String HEADER = "|         Database          | State |                Fingerprint                 |";
+    private static final String BODY   = "| %-25s | %-5s | %-42s |";
+}
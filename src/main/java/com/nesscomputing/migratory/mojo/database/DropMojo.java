@@ -1,11 +1,11 @@
 package com.nesscomputing.migratory.mojo.database;
 
 import java.util.List;
+import java.util.Map;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
-import org.skife.jdbi.v2.exceptions.DBIException;
 import org.skife.jdbi.v2.tweak.HandleCallback;
 import org.skife.jdbi.v2.tweak.StatementLocator;
 import org.skife.jdbi.v2.util.IntegerMapper;
@@ -14,6 +14,8 @@ import org.slf4j.LoggerFactory;
 
 
 import com.nesscomputing.migratory.MigratoryOption;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseCallback;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseResult;
 import com.nesscomputing.migratory.mojo.database.util.TemplatingStatementLocator;
 
 
@@ -34,6 +36,13 @@ public class DropMojo extends AbstractDatabaseMojo
      */
     private String databases;
 
+    /**
+     * Terminate all other sessions connected to a database before dropping it. Requires Postgres 9.2 or later.
+     *
+     * @parameter expression="${terminate}" default-value="false"
+     */
+    private boolean terminate = false;
+
     @Override
     protected void doExecute() throws Exception
     {
@@ -46,11 +55,15 @@ public class DropMojo extends AbstractDatabaseMojo
 
         final DBI rootDbi = getDBIFor(rootDBIConfig);
 
-        final StatementLocator statementLocator = new TemplatingStatementLocator("/sql/", loaderManager);
+        final StatementLocator statementLocator = new TemplatingStatementLocator("/sql/", loaderManager, metricsCollector);
         rootDbi.setStatementLocator(statementLocator);
 
-        for (final String database : databaseList) {
-            try {
+        final boolean dryRun = MigratoryOption.containsOption(MigratoryOption.DRY_RUN, optionList);
+
+        final Map<String, DatabaseResult<Void>> results = executeForDatabases(databaseList, new DatabaseCallback<Void>() {
+            @Override
+            public Void withDatabase(final String database) throws Exception
+            {
                 boolean databaseExists = rootDbi.withHandle(new HandleCallback<Boolean>() {
                     @Override
                     public Boolean withHandle(final Handle handle) {
@@ -61,31 +74,65 @@ public class DropMojo extends AbstractDatabaseMojo
                     }
                 });
 
-                if (databaseExists) {
-                    LOG.info("Dropping Database {}...", database);
+                if (!databaseExists) {
+                    LOG.info("... Database {} does not exist ...", database);
+                    return null;
+                }
 
-                    if (!MigratoryOption.containsOption(MigratoryOption.DRY_RUN, optionList)) {
-                        rootDbi.withHandle(new HandleCallback<Void>() {
-                            @Override
-                            public Void withHandle(final Handle handle) {
-                                handle.createStatement("#mojo:drop_database")
-                                .define("database", database)
-                                .execute();
-                                return null;
-                            }
+                LOG.info("Dropping Database {}...", database);
 
-                        });
+                if (!dryRun) {
+                    // Our own pooled connections to the database would block the drop as well.
+                    closeDataSources(getDBIConfigFor(database).getDBUrl());
+
+                    if (terminate) {
+                        terminateBackends(rootDbi, database);
                     }
 
-                    LOG.info("... done");
-                }
-                else {
-                    LOG.info("... Database {} does not exist ...", database);
+                    rootDbi.withHandle(new HandleCallback<Void>() {
+                        @Override
+                        public Void withHandle(final Handle handle) {
+                            handle.createStatement("#mojo:drop_database")
+                            .define("database", database)
+                            .execute();
+                            return null;
+                        }
+
+                    });
                 }
+
+                LOG.info("... done");
+                return null;
             }
-            catch (DBIException de) {
-                LOG.warn("While dropping {}: {}", database, de);
+        });
+
+        logSummary("Drop", results);
+
+        for (DatabaseResult<Void> result : results.values()) {
+            // Database problems have been reported above, everything else fails the build.
+            if (!result.isSuccess() && !(result.getException() instanceof RuntimeException)) {
+                throw new MojoExecutionException(String.format("While dropping '%s'", result.getDatabase()), result.getException());
+            }
+        }
+    }
+
+    /**
+     * Terminates all sessions connected to a database except the current one.
+     */
+    static void terminateBackends(final DBI rootDbi, final String database)
+    {
+        final int terminated = rootDbi.withHandle(new HandleCallback<Integer>() {
+            @Override
+            public Integer withHandle(final Handle handle) {
+                return handle.createQuery("#mojo:terminate_backends")
+                .bind("database", database)
+                .map(IntegerMapper.FIRST)
+                .first();
             }
+        });
+
+        if (terminated > 0) {
+            LOG.info("... terminated {} session(s) connected to {} ...", terminated, database);
         }
     }
 }
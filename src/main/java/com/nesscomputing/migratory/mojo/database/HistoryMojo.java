@@ -1,21 +1,39 @@
 package com.nesscomputing.migratory.mojo.database;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionStatus;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+import org.skife.jdbi.v2.tweak.StatementLocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.nesscomputing.migratory.Migratory;
 import com.nesscomputing.migratory.MigratoryException;
 import com.nesscomputing.migratory.metadata.MetadataInfo;
 import com.nesscomputing.migratory.migration.MigrationPlanner.MigrationDirection;
 import com.nesscomputing.migratory.mojo.database.util.DBIConfig;
-import com.nesscomputing.migratory.mojo.database.util.MojoLocator;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseCallback;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseResult;
+import com.nesscomputing.migratory.mojo.database.util.TemplatingStatementLocator;
 
 
 /**
@@ -36,6 +54,35 @@ public class HistoryMojo extends AbstractDatabaseMojo
      */
     private String databases = "all";
 
+    /**
+     * Read the history straight from the metadata tables and print rows as they arrive instead of loading
+     * the whole history of a database into memory first. Implied by "since" and "limit".
+     *
+     * @parameter expression="${streaming}" default-value="false"
+     */
+    private boolean streaming = false;
+
+    /**
+     * Number of metadata rows fetched per round trip in streaming mode.
+     *
+     * @parameter expression="${fetchSize}" default-value="500"
+     */
+    private int fetchSize = 500;
+
+    /**
+     * Only report migrations performed at or after this point in time (ISO 8601, e.g. 2012-06-01 or 2012-06-01T12:00).
+     *
+     * @parameter expression="${since}"
+     */
+    private String since = null;
+
+    /**
+     * Report at most this many migrations per personality, the most recent ones.
+     *
+     * @parameter expression="${limit}"
+     */
+    private Integer limit = null;
+
     @Override
     protected void doExecute() throws Exception
     {
@@ -46,35 +93,195 @@ public class HistoryMojo extends AbstractDatabaseMojo
             throw new MojoExecutionException("No permission to run this task!");
         }
 
+        // Configuration is resolved up front, the workers only talk to the databases.
+        final Map<String, DBIConfig> databaseConfigs = Maps.newHashMap();
+        final Map<String, Set<String>> personalities = Maps.newHashMap();
+        for (String database : databaseList) {
+            databaseConfigs.put(database, getDBIConfigFor(database));
+            personalities.put(database, getAvailableMigrations(database).keySet());
+        }
+
+        if (streaming || since != null || limit != null) {
+            streamHistory(databaseList, databaseConfigs, personalities);
+            return;
+        }
+
+        prefetchMigrations(databaseList);
+
+        final Map<String, DatabaseResult<Map<String, List<MetadataInfo>>>> results = executeForDatabases(databaseList, new DatabaseCallback<Map<String, List<MetadataInfo>>>() {
+            @Override
+            public Map<String, List<MetadataInfo>> withDatabase(final String database) throws Exception
+            {
+                final DBIConfig databaseConfig = databaseConfigs.get(database);
+                final DBI rootDbDbi = getRootDBIFor(databaseConfig);
+                final DBI dbi = getDBIFor(databaseConfig);
+
+                final Migratory migratory = createMigratory(dbi, rootDbDbi);
+                return migratory.dbHistory(personalities.get(database), optionList);
+            }
+        });
+
         LOG.info(FRAME);
         LOG.info(HEADER);
         LOG.info(FRAME);
 
-        for (String database : databaseList) {
+        // Report in database order, independent of the order in which the databases finished.
+        for (DatabaseResult<Map<String, List<MetadataInfo>>> result : new TreeMap<String, DatabaseResult<Map<String, List<MetadataInfo>>>>(results).values()) {
+            final String database = result.getDatabase();
+            final Exception e = result.getException();
 
-            final Map<String, MigrationInformation> availableMigrations = getAvailableMigrations(database);
+            if (e == null) {
+                dump(database, result.getValue());
+                LOG.info(FRAME);
+            }
+            else if (e instanceof MigratoryException || e instanceof RuntimeException) {
+                LOG.warn("While getting history for {}: {}", database, e);
+            }
+            else {
+                throw e;
+            }
+        }
+    }
 
-            final DBIConfig databaseConfig = getDBIConfigFor(database);
-            final DBI rootDbDbi = new DBI(databaseConfig.getDBUrl(), rootDBIConfig.getDBUser(), rootDBIConfig.getDBPassword());
-            final DBI dbi = getDBIFor(database);
+    private void streamHistory(final List<String> databaseList, final Map<String, DBIConfig> databaseConfigs, final Map<String, Set<String>> personalities)
+        throws Exception
+    {
+        if (fetchSize < 1) {
+            throw new MojoExecutionException("fetchSize must be positive!");
+        }
+        if (limit != null && limit < 0) {
+            throw new MojoExecutionException("limit must not be negative!");
+        }
+
+        final Timestamp sinceTimestamp;
+        try {
+            sinceTimestamp = (since == null) ? null : new Timestamp(ISODateTimeFormat.dateTimeParser().parseMillis(since));
+        }
+        catch (IllegalArgumentException iae) {
+            throw new MojoExecutionException("Could not parse '" + since + "' as a date!", iae);
+        }
 
-            try {
-                final Migratory migratory = new Migratory(migratoryConfig, dbi, rootDbDbi);
-                migratory.addLocator(new MojoLocator(migratory, manifestUrl));
-                final Map<String, List<MetadataInfo>> results = migratory.dbHistory(availableMigrations.keySet(), optionList);
+        final StatementLocator statementLocator = new TemplatingStatementLocator("/sql/", loaderManager, metricsCollector);
+        final String tableName = migratoryConfig.getMetadataTableName();
 
-                dump(database, results);
-                LOG.info(FRAME);
+        LOG.info(FRAME);
+        LOG.info(HEADER);
+        LOG.info(FRAME);
+
+        // Rows are printed by the workers as they are read. The log output is not grouped by database, that would hold
+        // it all in memory, so with more than one thread the rows of different databases interleave. Within a
+        // personality they are always in order.
+        final Map<String, DatabaseResult<Integer>> results = executeForDatabases(databaseList, false, new DatabaseCallback<Integer>() {
+            @Override
+            public Integer withDatabase(final String database) throws Exception
+            {
+                final DBI dbi = getDBIFor(databaseConfigs.get(database));
+                dbi.setStatementLocator(statementLocator);
+
+                int rows = 0;
+                for (final String personality : Sets.newTreeSet(personalities.get(database))) {
+                    // The postgres driver only honors the fetch size inside a transaction.
+                    rows += dbi.inTransaction(new TransactionCallback<Integer>() {
+                        @Override
+                        public Integer inTransaction(final Handle handle, final TransactionStatus status)
+                        {
+                            final Query<Map<String, Object>> query = handle.createQuery("#mojo:metadata_history")
+                            .define("table_name", tableName)
+                            .define("since", sinceTimestamp != null)
+                            .define("limit", limit != null)
+                            .bind("personality", personality)
+                            .setFetchSize(fetchSize);
+
+                            if (sinceTimestamp != null) {
+                                query.bind("since", sinceTimestamp);
+                            }
+                            if (limit != null) {
+                                query.bind("limit", limit.intValue());
+                            }
+
+                            final ResultIterator<String> it = query.map(new HistoryLineMapper(database, personality)).iterator();
+                            // With a limit, the newest rows come first and are held back to print them oldest first.
+                            final List<String> lines = (limit == null) ? null : Lists.<String>newArrayList();
+                            int count = 0;
+                            try {
+                                while (it.hasNext()) {
+                                    if (lines == null) {
+                                        LOG.info(it.next());
+                                    }
+                                    else {
+                                        lines.add(it.next());
+                                    }
+                                    count++;
+                                }
+                            }
+                            finally {
+                                it.close();
+                            }
+
+                            if (lines != null) {
+                                for (String line : Lists.reverse(lines)) {
+                                    LOG.info(line);
+                                }
+                            }
+                            return count;
+                        }
+                    });
+                }
+                return rows;
             }
-            catch (MigratoryException me) {
-                LOG.warn("While getting history for {}: {}", database, me);
+        });
+
+        LOG.info(FRAME);
+
+        for (DatabaseResult<Integer> result : new TreeMap<String, DatabaseResult<Integer>>(results).values()) {
+            final String database = result.getDatabase();
+            final Exception e = result.getException();
+
+            if (e == null) {
+                LOG.debug("Reported {} history rows for {}", result.getValue(), database);
+            }
+            else if (e instanceof MigratoryException || e instanceof RuntimeException) {
+                LOG.warn("While getting history for {}: {}", database, e);
             }
-            catch (RuntimeException re) {
-                LOG.warn("While getting history for {}: {}", database, re);
+            else {
+                throw e;
             }
         }
     }
 
+    /**
+     * Formats a row of the migratory metadata table in the same way as {@link HistoryMojo#dump(String, Map)}.
+     */
+    private static class HistoryLineMapper implements ResultSetMapper<String>
+    {
+        private final String database;
+        private final String personality;
+
+        HistoryLineMapper(final String database, final String personality)
+        {
+            this.database = database;
+            this.personality = personality;
+        }
+
+        @Override
+        public String map(final int index, final ResultSet r, final StatementContext ctx) throws SQLException
+        {
+            final String direction = r.getString("migration_direction");
+            final Timestamp created = r.getTimestamp("created");
+
+            return String.format(BODY,
+                                 database,
+                                 personality,
+                                 r.getInt("start_version"),
+                                 r.getInt("end_version"),
+                                 r.getString("migration_type"),
+                                 r.getString("migration_status"),
+                                 direction == null ? "" : shortDir(MigrationDirection.valueOf(direction)),
+                                 r.getString("migration_user"),
+                                 created == null ? "" : DATE_FORMAT.print(created.getTime()));
+        }
+    }
+
     private static final String FRAME  = "+---------------------------+---------------------------+-----------+------+-------+-----+--------------------+---------------------+";
     private static final String HEADER = "|         Database          |        Personality        | Migration | Type | State | Dir |       User         | Date                |";
     private static final String BODY   = "| %-25s | %-25s | %4d-%-4d | %-4s | %-5s | %-3s | %-18s | %18s |";
@@ -85,7 +292,7 @@ public class HistoryMojo extends AbstractDatabaseMojo
             return;
         }
 
-        for (final Map.Entry<String, List<MetadataInfo>> result : results.entrySet()) {
+        for (final Map.Entry<String, List<MetadataInfo>> result : new TreeMap<String, List<MetadataInfo>>(results).entrySet()) {
             final String personalityName = result.getKey();
             for (final MetadataInfo info : result.getValue()) {
 
@@ -0,0 +1,149 @@
+package com.nesscomputing.migratory.mojo.database;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.tweak.StatementLocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.nesscomputing.migratory.MigratoryException;
+import com.nesscomputing.migratory.StatusResult;
+import com.nesscomputing.migratory.mojo.database.util.DBIConfig;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseCallback;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseResult;
+import com.nesscomputing.migratory.mojo.database.util.MigrationCostEstimator;
+import com.nesscomputing.migratory.mojo.database.util.MigrationCostEstimator.CostEstimate;
+import com.nesscomputing.migratory.mojo.database.util.PendingScripts;
+import com.nesscomputing.migratory.mojo.database.util.PendingScripts.PendingScript;
+import com.nesscomputing.migratory.mojo.database.util.TemplatingStatementLocator;
+
+
+/**
+ * Maven goal that reports the estimated cost of an upgrade without changing the databases. Takes the same
+ * migrations as the upgrade goal, explains the DML of all pending scripts and lists the DDL that locks or
+ * rewrites existing tables.
+ *
+ * @aggregator true
+ * @requiresProject false
+ * @goal plan
+ */
+public class PlanMojo extends AbstractDatabaseMojo
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PlanMojo.class);
+
+    /**
+     * Describes the migrations to plan, in the same format as for the upgrade goal.
+     *
+     * @parameter expression="${migrations}"
+     */
+    private String migrations = "all";
+
+    @Override
+    protected void doExecute() throws Exception
+    {
+        final boolean permission = config.getBoolean(getPropertyName("permission.plan-db"), true);
+        if (!permission) {
+            throw new MojoExecutionException("No permission to run this task!");
+        }
+
+        final Map<String, String> databases = extractDatabases(migrations);
+
+        // Configuration is resolved up front, the workers only talk to the databases.
+        final Map<String, DBIConfig> databaseConfigs = Maps.newHashMap();
+        final Map<String, List<PlannedMigration>> plannedMigrations = Maps.newHashMap();
+        for (Map.Entry<String, String> database : databases.entrySet()) {
+            databaseConfigs.put(database.getKey(), getDBIConfigFor(database.getKey()));
+            plannedMigrations.put(database.getKey(), getPlannedMigrations(database));
+        }
+
+        prefetchMigrations(databases.keySet());
+
+        final StatementLocator statementLocator = new TemplatingStatementLocator("/sql/", loaderManager, metricsCollector);
+        final MigrationCostEstimator estimator = new MigrationCostEstimator();
+
+        final Map<String, DatabaseResult<List<String>>> results = executeForDatabases(databases.keySet(), new DatabaseCallback<List<String>>() {
+            @Override
+            public List<String> withDatabase(final String database) throws Exception
+            {
+                final DBIConfig databaseConfig = databaseConfigs.get(database);
+                final DBI rootDbDbi = getRootDBIFor(databaseConfig);
+                final DBI dbi = getDBIFor(databaseConfig);
+
+                final Set<String> personalities = Sets.newTreeSet();
+                for (PlannedMigration plannedMigration : plannedMigrations.get(database)) {
+                    personalities.add(plannedMigration.getName());
+                }
+                final Map<String, StatusResult> statusResults = createMigratory(dbi, rootDbDbi).dbStatus(personalities, optionList);
+
+                final DBI estimateDbi = getDBIFor(databaseConfig);
+                estimateDbi.setStatementLocator(statementLocator);
+
+                final List<String> lines = Lists.newArrayList();
+                for (PlannedMigration plannedMigration : plannedMigrations.get(database)) {
+                    final StatusResult statusResult = statusResults.get(plannedMigration.getName());
+                    final int currentVersion = (statusResult == null) ? 0 : statusResult.getCurrentVersion();
+
+                    for (PendingScript script : PendingScripts.getScripts(loaderManager, manifestUrl, plannedMigration.getName(), currentVersion, plannedMigration.getTargetVersion())) {
+                        if (script.getContents() == null) {
+                            continue;
+                        }
+                        final String scriptName = script.getName();
+                        for (CostEstimate estimate : estimator.estimate(estimateDbi, scriptName, script.getContents())) {
+                            lines.add(String.format(BODY,
+                                                    database,
+                                                    scriptName,
+                                                    estimate.getKind(),
+                                                    StringUtils.abbreviate(estimate.getTable(), 20),
+                                                    estimate.getLock(),
+                                                    estimate.isRewrite() ? "Y" : "N",
+                                                    estimate.isScan() ? "Y" : "N",
+                                                    estimate.getRows() == null ? "?" : estimate.getRows().toString(),
+                                                    estimate.getPages() == null ? "new" : estimate.getPages().toString(),
+                                                    estimate.isBlocking() ? "!" : ""));
+                        }
+                    }
+                }
+                return lines;
+            }
+        });
+
+        LOG.info(FRAME);
+        LOG.info(HEADER);
+        LOG.info(FRAME);
+
+        // Report in database order, independent of the order in which the databases finished.
+        for (DatabaseResult<List<String>> result : new TreeMap<String, DatabaseResult<List<String>>>(results).values()) {
+            final String database = result.getDatabase();
+            final Exception e = result.getException();
+
+            if (e == null) {
+                for (String line : result.getValue()) {
+                    LOG.info(line);
+                }
+                if (!result.getValue().isEmpty()) {
+                    LOG.info(FRAME);
+                }
+            }
+            else if (e instanceof MigratoryException || e instanceof RuntimeException) {
+                LOG.warn("While planning {}: {}", database, e);
+            }
+            else {
+                throw e;
+            }
+        }
+        LOG.info("Rows are estimated rows touched for DML and rows in the table for DDL. Scan marks DDL that reads the whole table without rewriting it. '!' marks statements that block writes to an existing table.");
+    }
+
+    private static final String FRAME  = "+---------------------------+---------------------------+----------+----------------------+------------------------+---------+------+------------+------------+---+";
+    private static final String HEADER = "|         Database          |          Script           |   Kind   |        Table         |          Lock          | Rewrite | Scan |    Rows    |   Pages    |   |";
+    private static final String BODY   = "| %-25s | %-25s | %-8s | %-20s | %-22s |    %1s    |  %1s   | %10s | %10s | %1s |";
+}
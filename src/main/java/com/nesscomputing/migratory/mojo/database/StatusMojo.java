@@ -1,20 +1,37 @@
 package com.nesscomputing.migratory.mojo.database;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.exceptions.DBIException;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.skife.jdbi.v2.tweak.StatementLocator;
+import org.skife.jdbi.v2.util.StringMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
 import com.nesscomputing.migratory.Migratory;
 import com.nesscomputing.migratory.MigratoryException;
 import com.nesscomputing.migratory.StatusResult;
 import com.nesscomputing.migratory.migration.MigrationPlanner.MigrationDirection;
 import com.nesscomputing.migratory.mojo.database.util.DBIConfig;
-import com.nesscomputing.migratory.mojo.database.util.MojoLocator;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseCallback;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseResult;
+import com.nesscomputing.migratory.mojo.database.util.StatusCache;
+import com.nesscomputing.migratory.mojo.database.util.TemplatingStatementLocator;
 
 
 /**
@@ -33,6 +50,13 @@ public class StatusMojo extends AbstractDatabaseMojo
      */
     private String databases = "all";
 
+    /**
+     * Reuse the status of the last run for databases whose migration metadata and sql files did not change.
+     *
+     * @parameter expression="${incremental}" default-value="false"
+     */
+    private boolean incremental = false;
+
     @Override
     protected void doExecute() throws Exception
     {
@@ -43,60 +67,162 @@ public class StatusMojo extends AbstractDatabaseMojo
             throw new MojoExecutionException("No permission to run this task!");
         }
 
-        LOG.info(FRAME);
-        LOG.info(HEADER);
-        LOG.info(FRAME);
-
+        // Configuration is resolved up front, the workers only talk to the databases.
+        final Map<String, DBIConfig> databaseConfigs = Maps.newHashMap();
+        final Map<String, Set<String>> personalities = Maps.newHashMap();
         for (String database : databaseList) {
+            databaseConfigs.put(database, getDBIConfigFor(database));
+            personalities.put(database, getAvailableMigrations(database).keySet());
+        }
 
-            final Map<String, MigrationInformation> availableMigrations = getAvailableMigrations(database);
+        prefetchMigrations(databaseList);
 
-            final DBIConfig databaseConfig = getDBIConfigFor(database);
-            final DBI rootDbDbi = new DBI(databaseConfig.getDBUrl(), rootDBIConfig.getDBUser(), rootDBIConfig.getDBPassword());
-            final DBI dbi = getDBIFor(database);
+        final File cacheDir = getCacheDir();
+        final StatusCache statusCache = (incremental && cacheDir != null) ? new StatusCache(new File(cacheDir, "status")) : null;
+        if (incremental && statusCache == null) {
+            LOG.warn("Local cache is disabled, ignoring incremental mode!");
+        }
 
-            try {
-                final Migratory migratory = new Migratory(migratoryConfig, dbi, rootDbDbi);
-                migratory.addLocator(new MojoLocator(migratory, manifestUrl));
-                final Map<String, StatusResult> results = migratory.dbStatus(availableMigrations.keySet(), optionList);
+        final Map<String, String> scriptFingerprints = Maps.newHashMap();
+        if (statusCache != null) {
+            for (String database : databaseList) {
+                scriptFingerprints.put(database, getMigrationsFingerprint(personalities.get(database)));
+            }
+        }
+
+        final StatementLocator statementLocator = new TemplatingStatementLocator("/sql/", loaderManager, metricsCollector);
+
+        final Map<String, DatabaseResult<List<String>>> results = executeForDatabases(databaseList, new DatabaseCallback<List<String>>() {
+            @Override
+            public List<String> withDatabase(final String database) throws Exception
+            {
+                final DBIConfig databaseConfig = databaseConfigs.get(database);
+                final DBI rootDbDbi = getRootDBIFor(databaseConfig);
+                final DBI dbi = getDBIFor(databaseConfig);
+
+                String fingerprint = null;
+                if (statusCache != null) {
+                    final String metadataFingerprint = getMetadataFingerprint(databaseConfig, statementLocator);
+                    if (metadataFingerprint != null) {
+                        fingerprint = metadataFingerprint + "/" + scriptFingerprints.get(database) + "/" + Arrays.toString(optionList);
+
+                        final List<String> lines = statusCache.get(cacheKey(databaseConfig), fingerprint);
+                        if (lines != null) {
+                            LOG.debug("Status of {} is unchanged", database);
+                            return lines;
+                        }
+                    }
+                }
+
+                final Migratory migratory = createMigratory(dbi, rootDbDbi);
+                final Map<String, StatusResult> statusResults = migratory.dbStatus(personalities.get(database), optionList);
+                final List<String> lines = format(database, statusResults.values());
+
+                if (fingerprint != null) {
+                    statusCache.put(cacheKey(databaseConfig), fingerprint, lines);
+                }
+                return lines;
+            }
+        });
+
+        LOG.info(FRAME);
+        LOG.info(HEADER);
+        LOG.info(FRAME);
 
-                dump(database, results.values());
-                LOG.info(FRAME);
+        // Report in database order, independent of the order in which the databases finished.
+        for (DatabaseResult<List<String>> result : new TreeMap<String, DatabaseResult<List<String>>>(results).values()) {
+            final String database = result.getDatabase();
+            final Exception e = result.getException();
+
+            if (e == null) {
+                for (String line : result.getValue()) {
+                    LOG.info(line);
+                }
+                if (!result.getValue().isEmpty()) {
+                    LOG.info(FRAME);
+                }
             }
-            catch (MigratoryException me) {
-                LOG.warn("While getting status for {}: {}", database, me);
+            else if (e instanceof MigratoryException || e instanceof RuntimeException) {
+                LOG.warn("While getting status for {}: {}", database, e);
             }
-            catch (RuntimeException re) {
-                LOG.warn("While getting status for {}: {}", database, re);
+            else {
+                throw e;
             }
         }
     }
 
+    /**
+     * Returns a fingerprint of the metadata table, or null if it could not be computed (e.g. because the table does not exist).
+     */
+    private String getMetadataFingerprint(final DBIConfig databaseConfig, final StatementLocator statementLocator)
+    {
+        // A DBI of its own, the one for the migration must keep the statement locator of migratory.
+        final DBI dbi = getDBIFor(databaseConfig);
+        dbi.setStatementLocator(statementLocator);
+        try {
+            return dbi.withHandle(new HandleCallback<String>() {
+                @Override
+                public String withHandle(final Handle handle) {
+                    return handle.createQuery("#mojo:metadata_fingerprint")
+                    .define("table_name", migratoryConfig.getMetadataTableName())
+                    .map(StringMapper.FIRST)
+                    .first();
+                }
+            });
+        }
+        catch (DBIException de) {
+            LOG.debug("Could not fingerprint metadata: {}", de);
+            return null;
+        }
+    }
+
+    private static String cacheKey(final DBIConfig databaseConfig)
+    {
+        return databaseConfig.getDBUser() + "@" + databaseConfig.getDBUrl();
+    }
+
     private static final String FRAME  = "+---------------------------+---------------------------+-------+------+-------+------+---------+-----+";
     private static final String HEADER = "|         Database          |        Personality        | State | Curr | First | Last | Migrate | Dir |";
     private static final String BODY   = "| %-25s | %-25s | %-5s | %4d |  %4s | %4s |    %1s    | %-3s |";
 
+    private static final Ordering<StatusResult> BY_PERSONALITY = Ordering.from(new Comparator<StatusResult>() {
+        @Override
+        public int compare(final StatusResult a, final StatusResult b)
+        {
+            return a.getPersonalityName().compareTo(b.getPersonalityName());
+        }
+    });
+
     public static void dump(final String database, final Collection<StatusResult> results)
+    {
+        for (String line : format(database, results)) {
+            LOG.info(line);
+        }
+    }
+
+    public static List<String> format(final String database, final Collection<StatusResult> results)
     {
         if (results == null || results.isEmpty()) {
-            return;
+            return Collections.emptyList();
         }
 
-        for (StatusResult result : results) {
-            LOG.info(String.format(BODY,
-                              database,
-                              result.getPersonalityName(),
-                              result.getLastState(),
-                              result.getCurrentVersion(),
-                              // If the status code has no access to the available migrations (because there is
-                              // no locator or loader, those will be MAX_VALUE for first and MIN_VALUE for last.
-                              // In that case, ignore the output.
-                              result.getFirstVersion() != Integer.MAX_VALUE ? Integer.toString(result.getFirstVersion()) : "",
-                              result.getLastVersion() != Integer.MIN_VALUE ? Integer.toString(result.getLastVersion()) : "",
-                              result.isMigrationPossible() ? "Y" : "N",
-                              shortDir(result.getDirection())
-                         ));
+        final List<String> lines = Lists.newArrayListWithCapacity(results.size());
+        for (StatusResult result : BY_PERSONALITY.sortedCopy(results)) {
+            lines.add(String.format(BODY,
+                                    database,
+                                    result.getPersonalityName(),
+                                    result.getLastState(),
+                                    result.getCurrentVersion(),
+                                    // If the status code has no access to the available migrations (because there is
+                                    // no locator or loader, those will be MAX_VALUE for first and MIN_VALUE for last.
+                                    // In that case, ignore the output.
+                                    result.getFirstVersion() != Integer.MAX_VALUE ? Integer.toString(result.getFirstVersion()) : "",
+                                    result.getLastVersion() != Integer.MIN_VALUE ? Integer.toString(result.getLastVersion()) : "",
+                                    result.isMigrationPossible() ? "Y" : "N",
+                                    shortDir(result.getDirection())
+                          ));
         }
+        return lines;
     }
 
     private static String shortDir(final MigrationDirection dir)
@@ -1,21 +1,48 @@
 package com.nesscomputing.migratory.mojo.database;
 
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.tweak.StatementLocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.nesscomputing.migratory.Migratory;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.nesscomputing.migratory.MigratoryException;
+import com.nesscomputing.migratory.MigratoryOption;
+import com.nesscomputing.migratory.StatusResult;
 import com.nesscomputing.migratory.migration.MigrationPlan;
+import com.nesscomputing.migratory.mojo.database.util.BatchRunner;
+import com.nesscomputing.migratory.mojo.database.util.BatchRunner.BatchScript;
+import com.nesscomputing.migratory.mojo.database.util.ConcurrentIndexBuilder;
+import com.nesscomputing.migratory.mojo.database.util.ConcurrentIndexBuilder.IndexStatement;
 import com.nesscomputing.migratory.mojo.database.util.DBIConfig;
-import com.nesscomputing.migratory.mojo.database.util.MojoLocator;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseCallback;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseExecutor;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseResult;
+import com.nesscomputing.migratory.mojo.database.util.LockRetryPolicy;
+import com.nesscomputing.migratory.mojo.database.util.MetricsCollector;
+import com.nesscomputing.migratory.mojo.database.util.PendingScripts;
+import com.nesscomputing.migratory.mojo.database.util.PendingScripts.PendingScript;
+import com.nesscomputing.migratory.mojo.database.util.TemplatingStatementLocator;
 
 
 /**
@@ -29,6 +56,8 @@ public class UpgradeMojo extends AbstractDatabaseMojo
 {
     private static final Logger LOG = LoggerFactory.getLogger(UpgradeMojo.class);
 
+    private static final Pattern TIMEOUT = Pattern.compile("\\d+\\s*(us|ms|s|min|h|d)?");
+
     /**
      * Describes the migrations for this database.
      *
@@ -43,6 +72,77 @@ public class UpgradeMojo extends AbstractDatabaseMojo
      */
     private String migrations = "all";
 
+    /**
+     * Run the personalities of a database that share the same priority at the same time, each on its own
+     * connection. All personalities of a priority finish before the next priority is started. The threads for the
+     * personalities come out of the parallelism that the databases leave over and are limited by the pool size.
+     *
+     * @parameter expression="${staged}" default-value="false"
+     */
+    private boolean staged = false;
+
+    /**
+     * Migrate each personality one script at a time, with a migration plan per script, so that the migration timings
+     * show every script on its own. Costs a round trip per script. Personalities with batch scripts are always
+     * migrated this way, so that each batch runs right after its version is reached.
+     *
+     * @parameter expression="${stepwise}" default-value="false"
+     */
+    private boolean stepwise = false;
+
+    /**
+     * Build the indexes of pending migrations with CREATE INDEX CONCURRENTLY before migrating, so that the
+     * migration itself does not lock the tables for writing while the index is built. Only applies to
+     * statements written as CREATE INDEX IF NOT EXISTS.
+     *
+     * @parameter expression="${concurrentIndexes}" default-value="false"
+     */
+    private boolean concurrentIndexes = false;
+
+    /**
+     * Default number of keys per chunk for batch scripts.
+     *
+     * @parameter expression="${batchSize}" default-value="10000"
+     */
+    private int batchSize = 10000;
+
+    /**
+     * Pause in milliseconds between two chunks of a batch script.
+     *
+     * @parameter expression="${batchDelay}" default-value="0"
+     */
+    private long batchDelay = 0L;
+
+    /**
+     * Maximum time a statement waits for a lock before it fails, e.g. "5s" or "500ms". Sets lock_timeout on the
+     * connections that run the migrations, requires Postgres 9.3 or later.
+     *
+     * @parameter expression="${lock.timeout}"
+     */
+    private String lockTimeout = null;
+
+    /**
+     * Maximum time a statement may run before it is cancelled, e.g. "10min". Sets statement_timeout on the connections
+     * that run the migrations.
+     *
+     * @parameter expression="${statement.timeout}"
+     */
+    private String statementTimeout = null;
+
+    /**
+     * Number of times a migration that failed because of a lock timeout is tried again.
+     *
+     * @parameter expression="${lock.retries}" default-value="3"
+     */
+    private int lockRetries = 3;
+
+    /**
+     * Milliseconds to wait before the first retry after a lock timeout. Doubles with every retry, plus a random jitter.
+     *
+     * @parameter expression="${lock.retry.delay}" default-value="1000"
+     */
+    private long lockRetryDelay = 1000L;
+
     @Override
     protected void doExecute() throws Exception
     {
@@ -52,101 +152,388 @@ public class UpgradeMojo extends AbstractDatabaseMojo
         }
 
         final Map<String, String> databases = extractDatabases(migrations);
-
+        final List<String> migrationInitSqls = getMigrationInitSqls();
+
+        // Resolve configuration and migration plans up front, so that a broken manifest fails
+        // before any database is touched and the workers never access the configuration.
+        final Map<String, DBIConfig> databaseConfigs = Maps.newHashMap();
+        final Map<String, MigrationPlan> migrationPlans = Maps.newHashMap();
+        final Map<String, SortedMap<Integer, List<PlannedMigration>>> migrationStages = Maps.newHashMap();
+        final Map<String, List<PlannedMigration>> plannedMigrations = Maps.newHashMap();
         for (Map.Entry<String, String> database : databases.entrySet()) {
-            final String databaseName = database.getKey();
-
-            final DBIConfig databaseConfig = getDBIConfigFor(databaseName);
-            final DBI rootDbDbi = new DBI(databaseConfig.getDBUrl(), rootDBIConfig.getDBUser(), rootDBIConfig.getDBPassword());
-            final DBI dbi = getDBIFor(databaseName);
+            databaseConfigs.put(database.getKey(), getDBIConfigFor(database.getKey()));
+            migrationPlans.put(database.getKey(), createMigrationPlan(database));
+            plannedMigrations.put(database.getKey(), getPlannedMigrations(database));
+            migrationStages.put(database.getKey(), createMigrationStages(database));
+        }
 
-            try {
-                final MigrationPlan rootMigrationPlan  = createMigrationPlan(database);
-                if (!rootMigrationPlan.isEmpty()) {
-                    LOG.info("Migrating {} ...", databaseName);
+        prefetchMigrations(databases.keySet());
+
+        final boolean buildIndexes = concurrentIndexes && !MigratoryOption.containsOption(MigratoryOption.DRY_RUN, optionList);
+        final ConcurrentIndexBuilder indexBuilder = new ConcurrentIndexBuilder(loaderManager, metricsCollector);
+        final StatementLocator statementLocator = new TemplatingStatementLocator("/sql/", loaderManager, metricsCollector);
+        final BatchRunner batchRunner = MigratoryOption.containsOption(MigratoryOption.DRY_RUN, optionList) ? null : new BatchRunner(loaderManager, metricsCollector, batchSize, batchDelay);
+
+        // The databases already use up to parallelism threads. Each database only gets its share of the rest for its
+        // personalities, and never more than its connection pool can serve.
+        final int databaseThreads = Math.max(1, Math.min(getParallelism(), databases.size()));
+        final int stageParallelism = Math.max(1, Math.min(getParallelism() / databaseThreads, getPoolConfig().getMaxSize()));
+
+        final Map<String, DatabaseResult<Void>> results = executeForDatabases(databases.keySet(), new DatabaseCallback<Void>() {
+            @Override
+            public Void withDatabase(final String databaseName) throws Exception
+            {
+                final DBIConfig databaseConfig = databaseConfigs.get(databaseName);
+                final DBI rootDbDbi = getRootDBIFor(databaseConfig, migrationInitSqls);
+                final DBI dbi = getDBIFor(databaseConfig, migrationInitSqls);
+
+                // A DBI of its own, the one for the migration must keep the statement locator of migratory.
+                final DBI batchDbi = (batchRunner == null) ? null : getDBIFor(databaseConfig);
+                if (batchDbi != null) {
+                    batchDbi.setStatementLocator(statementLocator);
+                }
 
-                    Migratory migratory = new Migratory(migratoryConfig, dbi, rootDbDbi);
-                    migratory.addLocator(new MojoLocator(migratory, manifestUrl));
-                    migratory.dbMigrate(rootMigrationPlan, optionList);
+                try {
+                    final MigrationPlan rootMigrationPlan = migrationPlans.get(databaseName);
+                    if (!rootMigrationPlan.isEmpty()) {
+                        LOG.info("Migrating {} ...", databaseName);
+
+                        final Map<String, List<BatchScript>> batchScripts = getBatchScripts(batchRunner, plannedMigrations.get(databaseName));
+                        final boolean stepping = stepwise || !batchScripts.isEmpty();
+
+                        // The current versions cost a round trip, only read them if anything needs them.
+                        final Map<String, Integer> currentVersions = (buildIndexes || stepping) ? getCurrentVersions(dbi, rootDbDbi, plannedMigrations.get(databaseName)) : null;
+
+                        if (buildIndexes) {
+                            buildIndexesConcurrently(databaseName, databaseConfig, plannedMigrations.get(databaseName), currentVersions, indexBuilder, statementLocator);
+                        }
+
+                        if (staged || stepping) {
+                            // Without staging, the personalities run one after another in the order of their priority.
+                            migrateStages(databaseName, dbi, rootDbDbi, migrationStages.get(databaseName), currentVersions, staged ? stageParallelism : 1,
+                                          batchRunner, batchDbi, batchScripts);
+                        }
+                        else {
+                            // The statements of each script are timed by the metrics collector of the DBI.
+                            final long startTime = System.nanoTime();
+                            migrate(databaseName, dbi, rootDbDbi, rootMigrationPlan);
+                            metricsCollector.record(MetricsCollector.MIGRATION, "all personalities", System.nanoTime() - startTime);
+                        }
+                    }
+                }
+                catch (MigratoryException me) {
+                    LOG.warn(String.format("While creating '%s': %s, Reason: %s", databaseName, me.getMessage(), me.getReason()));
+                    throw me;
                 }
+                LOG.info("... {} done", databaseName);
+                return null;
             }
-            catch (MigratoryException me) {
-                LOG.warn(String.format("While creating '%s': %s, Reason: %s", databaseName, me.getMessage(), me.getReason()));
+        });
+
+        logSummary("Upgrade", results);
+
+        for (DatabaseResult<Void> result : results.values()) {
+            // Migratory problems have been reported above, everything else fails the build.
+            if (!result.isSuccess() && !(result.getException() instanceof MigratoryException)) {
+                throw new MojoExecutionException(String.format("While upgrading '%s'", result.getDatabase()), result.getException());
             }
-            LOG.info("... done");
         }
     }
 
-    protected Map<String, String> extractDatabases(final String migrations)throws MojoExecutionException
+    /**
+     * Returns the current version of each planned personality, 0 for personalities that were never migrated.
+     */
+    private Map<String, Integer> getCurrentVersions(final DBI dbi, final DBI rootDbDbi, final List<PlannedMigration> plannedMigrations)
     {
-        String [] migrationNames = StringUtils.stripAll(StringUtils.split(migrations, ","));
+        final Set<String> personalities = Sets.newHashSet();
+        for (PlannedMigration plannedMigration : plannedMigrations) {
+            personalities.add(plannedMigration.getName());
+        }
 
-        final List<String> availableDatabases = getAvailableDatabases();
+        final Map<String, StatusResult> statusResults = createMigratory(dbi, rootDbDbi).dbStatus(personalities, optionList);
 
-        if (migrationNames == null) {
-            return  Collections.<String, String>emptyMap();
+        final Map<String, Integer> currentVersions = Maps.newHashMap();
+        for (String personality : personalities) {
+            final StatusResult statusResult = statusResults.get(personality);
+            currentVersions.put(personality, (statusResult == null) ? 0 : statusResult.getCurrentVersion());
         }
+        return currentVersions;
+    }
 
-        final Map<String, String> databases = Maps.newHashMap();
+    /**
+     * Returns the batch scripts of the planned personalities, only for personalities that have any.
+     */
+    private Map<String, List<BatchScript>> getBatchScripts(final BatchRunner batchRunner, final List<PlannedMigration> plannedMigrations)
+    {
+        final Map<String, List<BatchScript>> batchScripts = Maps.newHashMap();
+        if (batchRunner != null) {
+            for (PlannedMigration plannedMigration : plannedMigrations) {
+                final List<BatchScript> scripts = batchRunner.getBatchScripts(manifestUrl, plannedMigration.getName(), plannedMigration.getTargetVersion());
+                if (!scripts.isEmpty()) {
+                    batchScripts.put(plannedMigration.getName(), scripts);
+                }
+            }
+        }
+        return batchScripts;
+    }
 
-        if (migrationNames.length == 1 && migrationNames[0].equalsIgnoreCase("all")) {
-            migrationNames = availableDatabases.toArray(new String[availableDatabases.size()]);
+    /**
+     * Builds the indexes of all scripts between the current and the target version of each personality before the migration runs.
+     */
+    private void buildIndexesConcurrently(final String databaseName, final DBIConfig databaseConfig, final List<PlannedMigration> plannedMigrations,
+                                          final Map<String, Integer> currentVersions, final ConcurrentIndexBuilder indexBuilder,
+                                          final StatementLocator statementLocator)
+        throws Exception
+    {
+        final List<IndexStatement> statements = Lists.newArrayList();
+        for (PlannedMigration plannedMigration : plannedMigrations) {
+            final int currentVersion = currentVersions.get(plannedMigration.getName());
+            statements.addAll(indexBuilder.getIndexStatements(manifestUrl, plannedMigration.getName(), currentVersion, plannedMigration.getTargetVersion()));
         }
 
-        for (String migration : migrationNames) {
-            final String [] migrationFields = StringUtils.stripAll(StringUtils.split(migration, "="));
+        if (!statements.isEmpty()) {
+            // A DBI of its own, the one for the migration must keep the statement locator of migratory.
+            final DBI indexDbi = getDBIFor(databaseConfig);
+            indexDbi.setStatementLocator(statementLocator);
 
-            if (migrationFields == null || migrationFields.length < 1 || migrationFields.length > 2) {
-                throw new MojoExecutionException("Migration " + migration + " is invalid.");
-            }
+            final int failed = indexBuilder.buildIndexes(indexDbi, databaseName, statements);
+            LOG.info("Built {} of {} indexes on {} concurrently.", new Object[] { statements.size() - failed, statements.size(), databaseName });
+        }
+    }
 
-            if (!availableDatabases.contains(migrationFields[0])) {
-                throw new MojoExecutionException("Database " + migrationFields[0] + " is unknown!");
-            }
+    /**
+     * Runs the batch scripts from the given index on that are for the given version or an earlier one. Returns the index of the
+     * first batch script that was not run. Each chunk of a batch commits on its own.
+     */
+    private int runBatches(final String databaseName, final BatchRunner batchRunner, final DBI batchDbi, final List<BatchScript> batchScripts,
+                           final int firstBatch, final int version)
+        throws InterruptedException
+    {
+        final String checkpointTable = migratoryConfig.getMetadataTableName() + "_batch";
 
-            databases.put(migrationFields[0], (migrationFields.length == 1 ? null : migrationFields[1]));
+        int batch = firstBatch;
+        for (; batch < batchScripts.size() && batchScripts.get(batch).getVersion() <= version; batch++) {
+            batchRunner.run(batchDbi, databaseName, checkpointTable, batchScripts.get(batch));
         }
-
-        return databases;
+        return batch;
     }
 
     protected MigrationPlan createMigrationPlan(final Map.Entry<String, String> database) throws MojoExecutionException
     {
-        final Map<String, MigrationInformation> availableMigrations = getAvailableMigrations(database.getKey());
+        final MigrationPlan migrationPlan = new MigrationPlan();
+
+        for (PlannedMigration plannedMigration : getPlannedMigrations(database)) {
+            migrationPlan.addMigration(plannedMigration.getName(), plannedMigration.getTargetVersion(), plannedMigration.getPriority());
+        }
 
+        return migrationPlan;
+    }
+
+    private static MigrationPlan createMigrationPlan(final PlannedMigration plannedMigration, final int targetVersion)
+    {
         final MigrationPlan migrationPlan = new MigrationPlan();
+        migrationPlan.addMigration(plannedMigration.getName(), targetVersion, plannedMigration.getPriority());
+        return migrationPlan;
+    }
 
-        // Do we have any special migrations given?
-        final String migrations = database.getValue();
-        if (StringUtils.isEmpty(migrations)) {
-            for (MigrationInformation availableMigration : availableMigrations.values()) {
-                migrationPlan.addMigration(availableMigration.getName(), Integer.MAX_VALUE, availableMigration.getPriority());
+    /**
+     * Groups the migrations for a database by priority, ordered from the highest to the lowest priority. Within a
+     * priority, the personalities are ordered by name.
+     */
+    protected SortedMap<Integer, List<PlannedMigration>> createMigrationStages(final Map.Entry<String, String> database) throws MojoExecutionException
+    {
+        final SortedMap<Integer, List<PlannedMigration>> migrationStages = new TreeMap<Integer, List<PlannedMigration>>(Collections.<Integer>reverseOrder());
+
+        for (PlannedMigration plannedMigration : getPlannedMigrations(database)) {
+            List<PlannedMigration> stage = migrationStages.get(plannedMigration.getPriority());
+            if (stage == null) {
+                stage = Lists.newArrayList();
+                migrationStages.put(plannedMigration.getPriority(), stage);
             }
+            stage.add(plannedMigration);
+        }
+
+        for (List<PlannedMigration> stage : migrationStages.values()) {
+            Collections.sort(stage, BY_NAME);
+        }
+        return migrationStages;
+    }
 
-            return migrationPlan; // No
+    /**
+     * Returns the statements that set the timeouts on the connections of the migrations. All other connections, e.g.
+     * for concurrent index builds and batches, come from other pools and have no timeouts.
+     */
+    private List<String> getMigrationInitSqls() throws MojoExecutionException
+    {
+        final List<String> initSqls = Lists.newArrayList();
+        if (lockTimeout != null) {
+            initSqls.add("SET lock_timeout = '" + checkTimeout("lock.timeout", lockTimeout) + "'");
         }
+        if (statementTimeout != null) {
+            initSqls.add("SET statement_timeout = '" + checkTimeout("statement.timeout", statementTimeout) + "'");
+        }
+        return initSqls;
+    }
 
-        final String [] migrationNames = StringUtils.stripAll(StringUtils.split(migrations, "/"));
+    private static String checkTimeout(final String name, final String value) throws MojoExecutionException
+    {
+        final String timeout = value.trim();
+        if (!TIMEOUT.matcher(timeout).matches()) {
+            throw new MojoExecutionException(String.format("%s '%s' is not a valid timeout!", name, value));
+        }
+        return timeout;
+    }
 
-        for (String migrationName : migrationNames) {
-            final String [] migrationFields = StringUtils.stripAll(StringUtils.split(migrationName, "@"));
+    /**
+     * Runs a migration plan. If it fails because a lock could not be acquired in time, the plan is run again
+     * after a growing delay. Migrations that were applied before the failure are not repeated.
+     */
+    private void migrate(final String databaseName, final DBI dbi, final DBI rootDbDbi, final MigrationPlan migrationPlan)
+        throws Exception
+    {
+        final LockRetryPolicy retryPolicy = new LockRetryPolicy(lockTimeout == null ? 0 : lockRetries, lockRetryDelay);
 
-            if (migrationFields == null || migrationFields.length < 1 || migrationFields.length > 2) {
-                throw new MojoExecutionException("Migration " + migrationName + " is invalid.");
+        for (int retry = 1; ; retry++) {
+            try {
+                createMigratory(dbi, rootDbDbi).dbMigrate(migrationPlan, optionList);
+                return;
             }
+            catch (RuntimeException re) {
+                if (retry > retryPolicy.getRetries() || !LockRetryPolicy.isLockTimeout(re)) {
+                    throw re;
+                }
 
-            int targetVersion = migrationFields.length == 2 ? Integer.parseInt(migrationFields[1], 10) : Integer.MAX_VALUE;
+                final long delay = retryPolicy.getDelay(retry);
+                LOG.warn("Lock timeout while migrating {}, retry {} of {} in {} ms", new Object[] { databaseName, retry, retryPolicy.getRetries(), delay });
+                Thread.sleep(delay);
+            }
+        }
+    }
 
-            MigrationInformation migrationInformation = availableMigrations.get(migrationFields[0]);
+    /**
+     * Runs the migration stages of a database one after another. With a parallelism above one, the personalities
+     * within a stage run concurrently, each with its own Migratory and therefore its own connections.
+     */
+    private void migrateStages(final String databaseName, final DBI dbi, final DBI rootDbDbi, final SortedMap<Integer, List<PlannedMigration>> migrationStages,
+                               final Map<String, Integer> currentVersions, final int stageParallelism, final BatchRunner batchRunner, final DBI batchDbi,
+                               final Map<String, List<BatchScript>> batchScripts)
+        throws Exception
+    {
+        for (final Map.Entry<Integer, List<PlannedMigration>> stage : migrationStages.entrySet()) {
+            final List<PlannedMigration> personalityMigrations = stage.getValue();
 
-            if (migrationInformation == null) {
-                throw new MojoExecutionException("Migration " + migrationName + " is unknown!");
+            if (personalityMigrations.size() == 1 || stageParallelism == 1) {
+                for (PlannedMigration plannedMigration : personalityMigrations) {
+                    migratePersonality(databaseName, dbi, rootDbDbi, plannedMigration, currentVersions, batchRunner, batchDbi, batchScripts.get(plannedMigration.getName()));
+                }
+                continue;
             }
 
-            migrationPlan.addMigration(migrationInformation.getName(), targetVersion, migrationInformation.getPriority());
+            LOG.info("Migrating {} priority {} concurrently", databaseName, stage.getKey());
+
+            final int threads = Math.min(personalityMigrations.size(), stageParallelism);
+            final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("UpgradeMojo-" + databaseName + "-%d").setDaemon(true).build());
+
+            try {
+                final List<Future<Void>> futures = Lists.newArrayList();
+                for (final PlannedMigration plannedMigration : personalityMigrations) {
+                    futures.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception
+                        {
+                            MDC.put(DatabaseExecutor.MDC_DATABASE, databaseName);
+                            try {
+                                migratePersonality(databaseName, dbi, rootDbDbi, plannedMigration, currentVersions, batchRunner, batchDbi, batchScripts.get(plannedMigration.getName()));
+                                return null;
+                            }
+                            finally {
+                                MDC.remove(DatabaseExecutor.MDC_DATABASE);
+                            }
+                        }
+                    }));
+                }
+
+                // Barrier: every personality of this priority must be done before the next priority starts.
+                Throwable failure = null;
+                for (Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    }
+                    catch (ExecutionException ee) {
+                        if (failure == null) {
+                            failure = ee.getCause();
+                        }
+                    }
+                }
+
+                if (failure != null) {
+                    Throwables.propagateIfPossible(failure, Exception.class);
+                    throw new IllegalStateException(failure);
+                }
+            }
+            finally {
+                executor.shutdownNow();
+            }
         }
+    }
 
-        return migrationPlan;
+    /**
+     * Migrates a personality of a database to its target version with a single migration plan. In stepwise mode or if
+     * the personality has batch scripts, the pending scripts are applied one migration plan per script, so that every
+     * script is timed on its own, unless this is a dry run. A final plan for the target version then applies everything
+     * that is not a plain sql script, e.g. templates.
+     *
+     * A batch script runs as soon as the version it belongs to is reached and before the next script, so later
+     * migrations can depend on the backfill. Batches of earlier versions that did not complete run first. A batch
+     * script for a version that is only reached by the final plan runs after it.
+     */
+    private void migratePersonality(final String databaseName, final DBI dbi, final DBI rootDbDbi, final PlannedMigration plannedMigration,
+                                    final Map<String, Integer> currentVersions, final BatchRunner batchRunner, final DBI batchDbi,
+                                    final List<BatchScript> batchScripts)
+        throws Exception
+    {
+        LOG.info("Migrating {} personality {} ...", databaseName, plannedMigration.getName());
+
+        MDC.put(MetricsCollector.MDC_PERSONALITY, plannedMigration.getName());
+        final long startTime = System.nanoTime();
+        try {
+            if (!stepwise && batchScripts == null) {
+                migrate(databaseName, dbi, rootDbDbi, createMigrationPlan(plannedMigration, plannedMigration.getTargetVersion()));
+                return;
+            }
+
+            final List<BatchScript> scripts = (batchScripts == null) ? Collections.<BatchScript>emptyList() : batchScripts;
+            final int currentVersion = currentVersions.get(plannedMigration.getName());
+            int nextBatch = runBatches(databaseName, batchRunner, batchDbi, scripts, 0, currentVersion);
+
+            if (!MigratoryOption.containsOption(MigratoryOption.DRY_RUN, optionList)) {
+                for (PendingScript script : PendingScripts.getScripts(loaderManager, manifestUrl, plannedMigration.getName(), currentVersion, plannedMigration.getTargetVersion())) {
+                    final long scriptStartTime = System.nanoTime();
+                    migrate(databaseName, dbi, rootDbDbi, createMigrationPlan(plannedMigration, script.getEndVersion()));
+                    metricsCollector.record(MetricsCollector.MIGRATION, script.getName(), System.nanoTime() - scriptStartTime);
+
+                    nextBatch = runBatches(databaseName, batchRunner, batchDbi, scripts, nextBatch, script.getEndVersion());
+                }
+            }
+
+            migrate(databaseName, dbi, rootDbDbi, createMigrationPlan(plannedMigration, plannedMigration.getTargetVersion()));
+
+            if (nextBatch < scripts.size()) {
+                final int version = getCurrentVersions(dbi, rootDbDbi, Collections.singletonList(plannedMigration)).get(plannedMigration.getName());
+                runBatches(databaseName, batchRunner, batchDbi, scripts, nextBatch, version);
+            }
+        }
+        finally {
+            metricsCollector.record(MetricsCollector.MIGRATION, "priority " + plannedMigration.getPriority(), System.nanoTime() - startTime);
+            MDC.remove(MetricsCollector.MDC_PERSONALITY);
+        }
     }
-}
 
+    private static final Comparator<PlannedMigration> BY_NAME = new Comparator<PlannedMigration>() {
+        @Override
+        public int compare(final PlannedMigration a, final PlannedMigration b)
+        {
+            return a.getName().compareTo(b.getName());
+        }
+    };
+}
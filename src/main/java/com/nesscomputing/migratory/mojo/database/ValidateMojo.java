@@ -2,16 +2,20 @@ package com.nesscomputing.migratory.mojo.database;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.skife.jdbi.v2.DBI;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Maps;
 import com.nesscomputing.migratory.Migratory;
 import com.nesscomputing.migratory.MigratoryException;
 import com.nesscomputing.migratory.mojo.database.util.DBIConfig;
-import com.nesscomputing.migratory.mojo.database.util.MojoLocator;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseCallback;
+import com.nesscomputing.migratory.mojo.database.util.DatabaseResult;
 import com.nesscomputing.migratory.validation.ValidationResult;
 import com.nesscomputing.migratory.validation.ValidationResult.ValidationResultProblem;
 
@@ -42,31 +46,50 @@ public class ValidateMojo extends AbstractDatabaseMojo
             throw new MojoExecutionException("No permission to run this task!");
         }
 
-        LOG.info(HEAD_FRAME);
-        LOG.info(HEADER);
-        LOG.info(HEAD_FRAME);
-
+        // Configuration is resolved up front, the workers only talk to the databases.
+        final Map<String, DBIConfig> databaseConfigs = Maps.newHashMap();
+        final Map<String, Set<String>> personalities = Maps.newHashMap();
         for (String database : databaseList) {
+            databaseConfigs.put(database, getDBIConfigFor(database));
+            personalities.put(database, getAvailableMigrations(database).keySet());
+        }
+
+        prefetchMigrations(databaseList);
 
-            final Map<String, MigrationInformation> availableMigrations = getAvailableMigrations(database);
+        final Map<String, DatabaseResult<Map<String, ValidationResult>>> results = executeForDatabases(databaseList, new DatabaseCallback<Map<String, ValidationResult>>() {
+            @Override
+            public Map<String, ValidationResult> withDatabase(final String database) throws Exception
+            {
+                final DBIConfig databaseConfig = databaseConfigs.get(database);
+                final DBI rootDbDbi = getRootDBIFor(databaseConfig);
+                final DBI dbi = getDBIFor(databaseConfig);
 
-            final DBIConfig databaseConfig = getDBIConfigFor(database);
-            final DBI rootDbDbi = new DBI(databaseConfig.getDBUrl(), rootDBIConfig.getDBUser(), rootDBIConfig.getDBPassword());
-            final DBI dbi = getDBIFor(database);
+                final Migratory migratory = createMigratory(dbi, rootDbDbi);
+                return migratory.dbValidate(personalities.get(database), optionList);
+            }
+        });
+
+        LOG.info(HEAD_FRAME);
+        LOG.info(HEADER);
+        LOG.info(HEAD_FRAME);
 
-            try {
-                final Migratory migratory = new Migratory(migratoryConfig, dbi, rootDbDbi);
-                migratory.addLocator(new MojoLocator(migratory, manifestUrl));
-                final Map<String, ValidationResult> results = migratory.dbValidate(availableMigrations.keySet(), optionList);
+        // Report in database order, independent of the order in which the databases finished.
+        for (DatabaseResult<Map<String, ValidationResult>> result : new TreeMap<String, DatabaseResult<Map<String, ValidationResult>>>(results).values()) {
+            final String database = result.getDatabase();
+            final Exception e = result.getException();
 
-                dump(database, results);
+            if (e == null) {
+                dump(database, result.getValue());
                 LOG.info(HEAD_FRAME);
             }
-            catch (MigratoryException me) {
-                LOG.warn("While validaing for {}: {}", database, me);
+            else if (e instanceof MigratoryException) {
+                LOG.warn("While validaing for {}: {}", database, e);
+            }
+            else if (e instanceof RuntimeException) {
+                LOG.warn("While validating for {}: {}", database, e);
             }
-            catch (RuntimeException re) {
-                LOG.warn("While validating for {}: {}", database, re);
+            else {
+                throw e;
             }
         }
     }
@@ -86,7 +109,7 @@ public class ValidateMojo extends AbstractDatabaseMojo
             return;
         }
 
-        for (final Map.Entry<String, ValidationResult> result : results.entrySet()) {
+        for (final Map.Entry<String, ValidationResult> result : new TreeMap<String, ValidationResult>(results).entrySet()) {
             final String personalityName = result.getKey();
             final ValidationResult validationResult = result.getValue();
 
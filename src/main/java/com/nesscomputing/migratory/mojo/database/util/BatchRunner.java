@@ -0,0 +1,321 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.net.URI;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionStatus;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.nesscomputing.migratory.loader.LoaderManager;
+
+/**
+ * Runs batch scripts, data migrations that are executed in chunks of a key range with a commit after
+ * each chunk. A batch script is named &lt;personality&gt;.&lt;version&gt;.batch and sits next to the sql
+ * scripts of its personality. It looks like this:
+ *
+ * <pre>
+ * -- batch-range: SELECT min(id), max(id) FROM big_table
+ * -- batch-size: 5000
+ * UPDATE big_table SET flag = false WHERE id &gt;= :from_key AND id &lt; :to_key
+ * </pre>
+ *
+ * The range query returns the first and the last key, the statement is executed for consecutive key ranges
+ * [from_key, to_key). The batch size is optional. After each chunk, the next key is stored in a checkpoint
+ * table in the same transaction, so an interrupted batch resumes with the first chunk that did not commit.
+ */
+public class BatchRunner
+{
+    private static final Logger LOG = LoggerFactory.getLogger(BatchRunner.class);
+
+    private static final Pattern SCRIPT_VERSION = Pattern.compile("\\.(\\d+)\\.batch$");
+    private static final Pattern DIRECTIVE = Pattern.compile("^\\s*--\\s*batch-([\\w-]+):(.*)$");
+
+    private final LoaderManager loaderManager;
+    private final MetricsCollector metricsCollector;
+    private final int batchSize;
+    private final long batchDelay;
+
+    public BatchRunner(final LoaderManager loaderManager, final MetricsCollector metricsCollector, final int batchSize, final long batchDelay)
+    {
+        this.loaderManager = loaderManager;
+        this.metricsCollector = metricsCollector;
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+    }
+
+    /**
+     * Returns the batch scripts of a personality up to the given version, ordered by version.
+     */
+    public List<BatchScript> getBatchScripts(final String manifestUrl, final String personality, final int maxVersion)
+    {
+        final List<BatchScript> scripts = Lists.newArrayList();
+
+        final Map.Entry<URI, String> baseInformation = MojoLocator.getBaseInformation(manifestUrl, personality);
+        final Collection<URI> uris = loaderManager.loadFolder(baseInformation.getKey(), baseInformation.getValue());
+        if (uris == null) {
+            return scripts;
+        }
+
+        // Sorted by uri first, so that equal versions always run in the same order.
+        for (URI uri : Sets.newTreeSet(uris)) {
+            final Matcher versionMatcher = SCRIPT_VERSION.matcher(uri.getPath());
+            if (!versionMatcher.find()) {
+                continue;
+            }
+
+            final int version = Integer.parseInt(versionMatcher.group(1), 10);
+            if (version > maxVersion) {
+                continue;
+            }
+
+            final String contents = loaderManager.loadFile(uri);
+            if (contents != null) {
+                scripts.add(parse(personality, StringUtils.substringAfterLast(uri.getPath(), "/"), version, contents));
+            }
+        }
+
+        Collections.sort(scripts, BY_VERSION);
+        return scripts;
+    }
+
+    BatchScript parse(final String personality, final String scriptName, final int version, final String contents)
+    {
+        String rangeQuery = null;
+        int size = batchSize;
+        final StringBuilder statement = new StringBuilder();
+
+        for (String line : StringUtils.split(contents, "\n")) {
+            final Matcher matcher = DIRECTIVE.matcher(line);
+            if (!matcher.matches()) {
+                statement.append(line).append('\n');
+                continue;
+            }
+
+            final String name = matcher.group(1);
+            final String value = matcher.group(2).trim();
+            if ("range".equals(name)) {
+                rangeQuery = value;
+            }
+            else if ("size".equals(name)) {
+                size = Integer.parseInt(value, 10);
+            }
+            else {
+                throw new IllegalArgumentException("Unknown directive '" + name + "' in batch script " + scriptName);
+            }
+        }
+
+        final String sql = StringUtils.removeEnd(statement.toString().trim(), ";");
+        if (rangeQuery == null || StringUtils.isBlank(sql) || size < 1) {
+            throw new IllegalArgumentException("Batch script " + scriptName + " needs a batch-range directive, a positive batch-size and a statement!");
+        }
+
+        return new BatchScript(personality, scriptName, version, StringUtils.removeEnd(rangeQuery, ";"), size, sql);
+    }
+
+    /**
+     * Runs a batch script from its last checkpoint to the end of its key range. The DBI must use the mojo statement templates.
+     */
+    public void run(final DBI dbi, final String database, final String checkpointTable, final BatchScript script)
+        throws InterruptedException
+    {
+        final Long checkpoint = dbi.withHandle(new HandleCallback<Long>() {
+            @Override
+            public Long withHandle(final Handle handle) {
+                handle.createStatement("#mojo:create_batch_table")
+                .define("table_name", checkpointTable)
+                .execute();
+
+                final Map<String, Object> result = handle.createQuery("#mojo:read_batch_checkpoint")
+                .define("table_name", checkpointTable)
+                .bind("personality", script.getPersonality())
+                .bind("script", script.getScriptName())
+                .first();
+
+                if (result == null) {
+                    return null;
+                }
+                return Boolean.TRUE.equals(result.get("done")) ? Long.MAX_VALUE : ((Number) result.get("next_key")).longValue();
+            }
+        });
+
+        if (checkpoint != null && checkpoint == Long.MAX_VALUE) {
+            LOG.debug("Batch {} on {} is already done", script.getScriptName(), database);
+            return;
+        }
+
+        final long [] range = dbi.withHandle(new HandleCallback<long []>() {
+            @Override
+            public long [] withHandle(final Handle handle) {
+                return handle.createQuery(script.getRangeQuery())
+                .map(RANGE_MAPPER)
+                .first();
+            }
+        });
+
+        final long startTime = System.nanoTime();
+        long fromKey = (checkpoint != null) ? checkpoint : (range == null ? 0L : range[0]);
+
+        if (checkpoint == null) {
+            updateCheckpoint(dbi, checkpointTable, script, null, fromKey, false);
+        }
+
+        if (range != null) {
+            LOG.info("... running batch {} on {} for keys {} to {} ...", new Object[] { script.getScriptName(), database, fromKey, range[1] });
+
+            int chunks = 0;
+            boolean more = fromKey <= range[1];
+            while (more) {
+                if (chunks++ > 0 && batchDelay > 0) {
+                    Thread.sleep(batchDelay);
+                }
+
+                // Last key of the chunk, never past the end of the range and without overflowing.
+                final long lastKey = (fromKey > Long.MAX_VALUE - (script.getSize() - 1)) ? range[1] : Math.min(range[1], fromKey + script.getSize() - 1);
+
+                final long chunkFromKey = fromKey;
+                // to_key is exclusive, so a key of Long.MAX_VALUE can not be part of a chunk.
+                final long chunkToKey = (lastKey == Long.MAX_VALUE) ? lastKey : lastKey + 1;
+
+                dbi.inTransaction(new TransactionCallback<Void>() {
+                    @Override
+                    public Void inTransaction(final Handle handle, final TransactionStatus status) {
+                        handle.createStatement(script.getStatement())
+                        .bind("from_key", chunkFromKey)
+                        .bind("to_key", chunkToKey)
+                        .execute();
+
+                        updateCheckpoint(handle, checkpointTable, script, chunkToKey, false);
+                        return null;
+                    }
+                });
+
+                more = lastKey < range[1];
+                fromKey = chunkToKey;
+                LOG.debug("Batch {} on {} committed keys up to {}", new Object[] { script.getScriptName(), database, fromKey });
+            }
+        }
+
+        updateCheckpoint(dbi, checkpointTable, script, fromKey, fromKey, true);
+        metricsCollector.record(MetricsCollector.MIGRATION, "batch " + script.getScriptName(), System.nanoTime() - startTime);
+    }
+
+    private void updateCheckpoint(final DBI dbi, final String checkpointTable, final BatchScript script, final Long existingKey, final long nextKey, final boolean done)
+    {
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) {
+                if (existingKey == null) {
+                    handle.createStatement("#mojo:insert_batch_checkpoint")
+                    .define("table_name", checkpointTable)
+                    .bind("personality", script.getPersonality())
+                    .bind("script", script.getScriptName())
+                    .bind("next_key", nextKey)
+                    .execute();
+                }
+                else {
+                    updateCheckpoint(handle, checkpointTable, script, nextKey, done);
+                }
+                return null;
+            }
+        });
+    }
+
+    private static void updateCheckpoint(final Handle handle, final String checkpointTable, final BatchScript script, final long nextKey, final boolean done)
+    {
+        handle.createStatement("#mojo:update_batch_checkpoint")
+        .define("table_name", checkpointTable)
+        .bind("personality", script.getPersonality())
+        .bind("script", script.getScriptName())
+        .bind("next_key", nextKey)
+        .bind("done", done)
+        .execute();
+    }
+
+    private static final Comparator<BatchScript> BY_VERSION = new Comparator<BatchScript>() {
+        @Override
+        public int compare(final BatchScript a, final BatchScript b)
+        {
+            return a.getVersion() < b.getVersion() ? -1 : (a.getVersion() == b.getVersion() ? 0 : 1);
+        }
+    };
+
+    private static final ResultSetMapper<long []> RANGE_MAPPER = new ResultSetMapper<long []>() {
+        @Override
+        public long [] map(final int index, final ResultSet r, final StatementContext ctx) throws SQLException
+        {
+            final long minKey = r.getLong(1);
+            final long maxKey = r.getLong(2);
+
+            // min and max are null if the table is empty.
+            return r.wasNull() ? null : new long [] { minKey, maxKey };
+        }
+    };
+
+    public static class BatchScript
+    {
+        private final String personality;
+        private final String scriptName;
+        private final int version;
+        private final String rangeQuery;
+        private final int size;
+        private final String statement;
+
+        BatchScript(final String personality, final String scriptName, final int version, final String rangeQuery, final int size, final String statement)
+        {
+            this.personality = personality;
+            this.scriptName = scriptName;
+            this.version = version;
+            this.rangeQuery = rangeQuery;
+            this.size = size;
+            this.statement = statement;
+        }
+
+        public String getPersonality()
+        {
+            return personality;
+        }
+
+        public String getScriptName()
+        {
+            return scriptName;
+        }
+
+        public int getVersion()
+        {
+            return version;
+        }
+
+        public String getRangeQuery()
+        {
+            return rangeQuery;
+        }
+
+        public int getSize()
+        {
+            return size;
+        }
+
+        public String getStatement()
+        {
+            return statement;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import com.nesscomputing.migratory.loader.LoaderManager;
+import com.nesscomputing.migratory.loader.MigrationLoader;
+
+/**
+ * Wraps a {@link LoaderManager} and keeps a local copy of everything that is loaded from http or https
+ * locations.
+ *
+ * Files and folder listings are revalidated with the server using the ETag and Last-Modified headers of
+ * the cached copy, so an unchanged file or folder costs a single request without any content download.
+ * Revalidation uses the same credentials as the http loader. In offline mode, no remote requests are
+ * made and everything is served from the cache.
+ *
+ * All other locations are passed through to the wrapped loaders.
+ */
+public class CachingLoader implements MigrationLoader
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CachingLoader.class);
+
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "last-modified";
+    private static final String LOCATION = "location";
+
+    /** Milliseconds to wait for a manifest server, so that a stalled server does not hang all workers. */
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int READ_TIMEOUT = 30000;
+
+    private final LoaderManager delegate;
+    private final File cacheDir;
+    private final boolean offline;
+    private final String authorization;
+
+    public CachingLoader(final LoaderManager delegate, final File cacheDir, final boolean offline)
+    {
+        this(delegate, cacheDir, offline, null, null);
+    }
+
+    /**
+     * @param httpLogin User for revalidation requests, the same that the http loader uses. May be null.
+     * @param httpPassword Password for revalidation requests.
+     */
+    public CachingLoader(final LoaderManager delegate, final File cacheDir, final boolean offline, final String httpLogin, final String httpPassword)
+    {
+        this.delegate = delegate;
+        this.cacheDir = cacheDir;
+        this.offline = offline;
+
+        if (StringUtils.isEmpty(httpLogin)) {
+            this.authorization = null;
+        }
+        else {
+            final String credentials = httpLogin + ":" + StringUtils.defaultString(httpPassword);
+            this.authorization = "Basic " + BaseEncoding.base64().encode(credentials.getBytes(Charsets.UTF_8));
+        }
+    }
+
+    @Override
+    public boolean accept(final URI uri)
+    {
+        return isRemote(uri) || delegate.accept(uri);
+    }
+
+    @Override
+    public Collection<URI> loadFolder(final URI folderUri, final String searchPattern)
+    {
+        if (!isRemote(folderUri)) {
+            return delegate.loadFolder(folderUri, searchPattern);
+        }
+
+        final File dataFile = getCacheFile(folderUri + " " + searchPattern, ".folder");
+        final File metaFile = getCacheFile(folderUri + " " + searchPattern, ".folder.meta");
+
+        final String cachedContents = read(dataFile);
+
+        if (offline) {
+            if (cachedContents == null) {
+                throw new IllegalStateException("Folder '" + folderUri + "' is not cached, can not load it in offline mode!");
+            }
+            LOG.trace("Offline, using cached listing of {}", folderUri);
+            return parseListing(cachedContents);
+        }
+
+        // The listing is built by the http loader from the folder page, so only ask the server whether that page changed.
+        String etag = null;
+        String lastModified = null;
+        HttpURLConnection connection = null;
+        try {
+            connection = openConnection(folderUri, (cachedContents == null) ? null : readMetadata(metaFile));
+            connection.setRequestMethod("HEAD");
+
+            final int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cachedContents != null) {
+                LOG.trace("{} is unchanged, using cached listing", folderUri);
+                return parseListing(cachedContents);
+            }
+            else if (status == HttpURLConnection.HTTP_OK) {
+                etag = connection.getHeaderField("ETag");
+                lastModified = connection.getHeaderField("Last-Modified");
+            }
+        }
+        catch (IOException ioe) {
+            LOG.debug("While revalidating {}: {}", folderUri, ioe);
+        }
+        finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        final Collection<URI> uris = delegate.loadFolder(folderUri, searchPattern);
+        if (uris != null) {
+            store(folderUri, dataFile, metaFile, Joiner.on('\n').join(uris), etag, lastModified);
+        }
+        return uris;
+    }
+
+    @Override
+    public String loadFile(final URI fileUri)
+    {
+        if (!isRemote(fileUri)) {
+            return delegate.loadFile(fileUri);
+        }
+
+        final File dataFile = getCacheFile(fileUri.toString(), ".data");
+        final File metaFile = getCacheFile(fileUri.toString(), ".meta");
+
+        final String cachedContents = read(dataFile);
+        final Properties metadata = readMetadata(metaFile);
+
+        if (offline) {
+            if (cachedContents == null) {
+                throw new IllegalStateException("File '" + fileUri + "' is not cached, can not load it in offline mode!");
+            }
+            LOG.trace("Offline, using cached copy of {}", fileUri);
+            return cachedContents;
+        }
+
+        HttpURLConnection connection = null;
+        try {
+            connection = openConnection(fileUri, (cachedContents == null) ? null : metadata);
+
+            final int status = connection.getResponseCode();
+
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cachedContents != null) {
+                LOG.trace("{} is unchanged, using cached copy", fileUri);
+                return cachedContents;
+            }
+            else if (status == HttpURLConnection.HTTP_OK) {
+                final InputStream is = connection.getInputStream();
+                final String contents;
+                try {
+                    contents = CharStreams.toString(new InputStreamReader(is, Charsets.UTF_8));
+                }
+                finally {
+                    Closeables.closeQuietly(is);
+                }
+                store(fileUri, dataFile, metaFile, contents, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+                return contents;
+            }
+
+            LOG.debug("Got status {} for {}, loading without cache validation", status, fileUri);
+        }
+        catch (IOException ioe) {
+            LOG.debug("While revalidating {}: {}", fileUri, ioe);
+        }
+        finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        // Anything unexpected (e.g. authentication required) is handled by the regular loaders. The result is
+        // stored without validators, so it is refreshed on the next run but still available in offline mode.
+        final String contents = delegate.loadFile(fileUri);
+        if (contents != null) {
+            store(fileUri, dataFile, metaFile, contents, null, null);
+        }
+        return contents;
+    }
+
+    /**
+     * Opens a connection with the credentials of the http loader. If metadata of a cached copy is given, the
+     * request is conditional on it.
+     */
+    private HttpURLConnection openConnection(final URI uri, final Properties metadata) throws IOException
+    {
+        final HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        if (metadata != null) {
+            if (metadata.getProperty(ETAG) != null) {
+                connection.setRequestProperty("If-None-Match", metadata.getProperty(ETAG));
+            }
+            if (metadata.getProperty(LAST_MODIFIED) != null) {
+                connection.setRequestProperty("If-Modified-Since", metadata.getProperty(LAST_MODIFIED));
+            }
+        }
+        return connection;
+    }
+
+    private static List<URI> parseListing(final String contents)
+    {
+        final List<URI> uris = Lists.newArrayList();
+        for (String uri : Splitter.on('\n').omitEmptyStrings().split(contents)) {
+            uris.add(URI.create(uri));
+        }
+        return uris;
+    }
+
+    private static boolean isRemote(final URI uri)
+    {
+        return "http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme());
+    }
+
+    private File getCacheFile(final String key, final String suffix)
+    {
+        return new File(cacheDir, Hashing.sha1().hashBytes(key.getBytes(Charsets.UTF_8)).toString() + suffix);
+    }
+
+    private void store(final URI uri, final File dataFile, final File metaFile, final String contents, final String etag, final String lastModified)
+    {
+        final Properties metadata = new Properties();
+        metadata.setProperty(LOCATION, uri.toString());
+        if (!StringUtils.isBlank(etag)) {
+            metadata.setProperty(ETAG, etag);
+        }
+        if (!StringUtils.isBlank(lastModified)) {
+            metadata.setProperty(LAST_MODIFIED, lastModified);
+        }
+
+        write(dataFile, contents);
+
+        OutputStream os = null;
+        try {
+            final File tmpFile = File.createTempFile("meta", ".tmp", metaFile.getParentFile());
+            os = new FileOutputStream(tmpFile);
+            metadata.store(os, null);
+            os.close();
+            os = null;
+            Files.move(tmpFile, metaFile);
+        }
+        catch (IOException ioe) {
+            LOG.warn("Could not write cache metadata for {}: {}", uri, ioe);
+        }
+        finally {
+            Closeables.closeQuietly(os);
+        }
+    }
+
+    private void write(final File file, final String contents)
+    {
+        try {
+            Files.createParentDirs(file);
+            // Concurrent workers may store the same file, so every write goes through its own temporary file.
+            final File tmpFile = File.createTempFile("data", ".tmp", file.getParentFile());
+            Files.write(contents, tmpFile, Charsets.UTF_8);
+            Files.move(tmpFile, file);
+        }
+        catch (IOException ioe) {
+            LOG.warn("Could not write cache file {}: {}", file, ioe);
+        }
+    }
+
+    private static String read(final File file)
+    {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            return Files.toString(file, Charsets.UTF_8);
+        }
+        catch (IOException ioe) {
+            LOG.warn("Could not read cache file {}: {}", file, ioe);
+            return null;
+        }
+    }
+
+    private static Properties readMetadata(final File file)
+    {
+        final Properties metadata = new Properties();
+        if (file.isFile()) {
+            InputStream is = null;
+            try {
+                is = new FileInputStream(file);
+                metadata.load(is);
+            }
+            catch (IOException ioe) {
+                LOG.warn("Could not read cache metadata {}: {}", file, ioe);
+            }
+            finally {
+                Closeables.closeQuietly(is);
+            }
+        }
+        return metadata;
+    }
+}
@@ -0,0 +1,170 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.exceptions.DBIException;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.nesscomputing.migratory.loader.LoaderManager;
+import com.nesscomputing.migratory.mojo.database.util.PendingScripts.PendingScript;
+
+/**
+ * Builds the indexes of pending migration scripts with CREATE INDEX CONCURRENTLY before the migrations run.
+ *
+ * Only statements of the form "CREATE [UNIQUE] INDEX IF NOT EXISTS name ON ..." are built up front. When the
+ * migration runs afterwards, the statement finds the index and returns right away, so the write lock on the
+ * table is only held for a moment. The scripts themselves are never changed, so their checksums stay valid.
+ *
+ * A concurrent build that fails leaves an invalid index behind. Those are dropped before the next attempt.
+ */
+public class ConcurrentIndexBuilder
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrentIndexBuilder.class);
+
+    private static final Pattern INDEX_STATEMENT = Pattern.compile("CREATE\\s+(UNIQUE\\s+)?INDEX\\s+IF\\s+NOT\\s+EXISTS\\s+" + MigrationCostEstimator.TABLE + "\\s+(ON\\s[^;]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern BLOCKING_INDEX_STATEMENT = Pattern.compile("CREATE\\s+(UNIQUE\\s+)?INDEX\\s+(?!IF\\s|CONCURRENTLY\\s)" + MigrationCostEstimator.TABLE + "\\s+ON\\s", Pattern.CASE_INSENSITIVE);
+
+    private final LoaderManager loaderManager;
+    private final MetricsCollector metricsCollector;
+
+    public ConcurrentIndexBuilder(final LoaderManager loaderManager, final MetricsCollector metricsCollector)
+    {
+        this.loaderManager = loaderManager;
+        this.metricsCollector = metricsCollector;
+    }
+
+    /**
+     * Returns the index statements of all sql scripts of a personality that migrate from the current version
+     * towards the target version.
+     */
+    public List<IndexStatement> getIndexStatements(final String manifestUrl, final String personality, final int currentVersion, final int targetVersion)
+    {
+        final List<IndexStatement> statements = Lists.newArrayList();
+        for (PendingScript script : PendingScripts.getScripts(loaderManager, manifestUrl, personality, currentVersion, targetVersion)) {
+            if (script.getContents() != null) {
+                statements.addAll(findIndexStatements(script.getUri(), script.getContents()));
+            }
+        }
+        return statements;
+    }
+
+    static List<IndexStatement> findIndexStatements(final URI uri, final String script)
+    {
+        final List<IndexStatement> statements = Lists.newArrayList();
+
+        final Matcher matcher = INDEX_STATEMENT.matcher(script);
+        while (matcher.find()) {
+            final String unique = matcher.group(1) == null ? "" : "UNIQUE ";
+            final String indexName = matcher.group(2);
+            statements.add(new IndexStatement(indexName, "CREATE " + unique + "INDEX CONCURRENTLY IF NOT EXISTS " + indexName + " " + matcher.group(3).trim()));
+        }
+
+        final Matcher blockingMatcher = BLOCKING_INDEX_STATEMENT.matcher(script);
+        while (blockingMatcher.find()) {
+            LOG.warn("Index {} in {} can not be built concurrently, use CREATE INDEX IF NOT EXISTS!", blockingMatcher.group(2), uri);
+        }
+
+        return statements;
+    }
+
+    /**
+     * Builds the given indexes one after another. The DBI must use the mojo statement templates. Returns the number
+     * of indexes that could not be built, those are built by the migration itself.
+     */
+    public int buildIndexes(final DBI dbi, final String database, final List<IndexStatement> statements)
+    {
+        int failed = 0;
+
+        for (final IndexStatement statement : statements) {
+            try {
+                dropInvalidIndex(dbi, database, statement.getIndexName());
+
+                LOG.info("... building index {} on {} concurrently ...", statement.getIndexName(), database);
+                final long startTime = System.nanoTime();
+
+                // CREATE INDEX CONCURRENTLY can not run inside a transaction, so this runs in autocommit mode.
+                dbi.withHandle(new HandleCallback<Void>() {
+                    @Override
+                    public Void withHandle(final Handle handle) {
+                        handle.execute(statement.getSql());
+                        return null;
+                    }
+                });
+                metricsCollector.record(MetricsCollector.MIGRATION, "index " + statement.getIndexName(), System.nanoTime() - startTime);
+            }
+            catch (DBIException de) {
+                // e.g. the table is created by the same migration. The migration builds the index, which is cheap on a new table.
+                LOG.warn("Could not build index {} on {} concurrently: {}", new Object[] { statement.getIndexName(), database, de });
+                try {
+                    dropInvalidIndex(dbi, database, statement.getIndexName());
+                }
+                catch (DBIException de2) {
+                    LOG.warn("While dropping invalid index {} on {}: {}", new Object[] { statement.getIndexName(), database, de2 });
+                }
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    private void dropInvalidIndex(final DBI dbi, final String database, final String indexName)
+    {
+        // The catalog holds the name without quotes and schema, the drop statement needs it as written.
+        final String relationName = MigrationCostEstimator.unquote(indexName.contains(".") ? StringUtils.substringAfter(indexName, ".") : indexName);
+
+        final Boolean valid = dbi.withHandle(new HandleCallback<Boolean>() {
+            @Override
+            public Boolean withHandle(final Handle handle) {
+                final Map<String, Object> result = handle.createQuery("#mojo:detect_index")
+                .bind("index_name", relationName)
+                .first();
+                return result == null ? null : (Boolean) result.get("valid");
+            }
+        });
+
+        if (valid != null && !valid) {
+            LOG.info("... dropping invalid index {} on {} from an earlier build ...", indexName, database);
+            dbi.withHandle(new HandleCallback<Void>() {
+                @Override
+                public Void withHandle(final Handle handle) {
+                    handle.createStatement("#mojo:drop_index_concurrently")
+                    .define("index_name", indexName)
+                    .execute();
+                    return null;
+                }
+            });
+        }
+    }
+
+    public static class IndexStatement
+    {
+        private final String indexName;
+        private final String sql;
+
+        IndexStatement(final String indexName, final String sql)
+        {
+            this.indexName = indexName;
+            this.sql = sql;
+        }
+
+        public String getIndexName()
+        {
+            return indexName;
+        }
+
+        public String getSql()
+        {
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.commons.dbcp.ConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Hands out pooled data sources, one per JDBC url and user. All pools are
+ * shut down when the manager is closed. If a limit per server is configured,
+ * the pools of all databases on a server share it.
+ */
+public class DataSourceManager
+{
+    private static final Logger LOG = LoggerFactory.getLogger(DataSourceManager.class);
+
+    private final PoolConfig poolConfig;
+    private final MetricsCollector metricsCollector;
+
+    private final Map<String, BasicDataSource> dataSources = Maps.newHashMap();
+    private final Map<String, ServerLimit> serverLimits = Maps.newHashMap();
+
+    private boolean closed = false;
+
+    public DataSourceManager(final PoolConfig poolConfig, final MetricsCollector metricsCollector)
+    {
+        this.poolConfig = poolConfig;
+        this.metricsCollector = metricsCollector;
+    }
+
+    public DataSource getDataSource(final String driverClass, final String url, final String user, final String password)
+    {
+        return getDataSource(driverClass, url, user, password, Collections.<String>emptyList());
+    }
+
+    /**
+     * Returns a data source whose connections run the given statements when they are opened, e.g. to set session
+     * parameters. Connections with different statements never share a pool.
+     */
+    public synchronized DataSource getDataSource(final String driverClass, final String url, final String user, final String password, final List<String> connectionInitSqls)
+    {
+        if (closed) {
+            throw new IllegalStateException("DataSourceManager was already closed!");
+        }
+
+        final String key = getKey(url, user, connectionInitSqls);
+        BasicDataSource dataSource = dataSources.get(key);
+
+        if (dataSource == null) {
+            LOG.debug("Creating connection pool for {}", key);
+
+            final ServerLimit serverLimit = getServerLimit(DatabaseServer.getServer(url));
+
+            dataSource = new BasicDataSource() {
+                @Override
+                public Connection getConnection() throws SQLException
+                {
+                    final long startTime = System.nanoTime();
+                    try {
+                        return super.getConnection();
+                    }
+                    finally {
+                        metricsCollector.record(MetricsCollector.CONNECTION, key, System.nanoTime() - startTime);
+                    }
+                }
+
+                @Override
+                protected ConnectionFactory createConnectionFactory() throws SQLException
+                {
+                    final ConnectionFactory connectionFactory = super.createConnectionFactory();
+                    if (serverLimit == null) {
+                        return connectionFactory;
+                    }
+
+                    return new ConnectionFactory() {
+                        @Override
+                        public Connection createConnection() throws SQLException
+                        {
+                            return serverLimit.open(connectionFactory);
+                        }
+                    };
+                }
+            };
+            if (driverClass != null) {
+                dataSource.setDriverClassName(driverClass);
+            }
+            dataSource.setUrl(url);
+            dataSource.setUsername(user);
+            dataSource.setPassword(password);
+
+            if (serverLimit == null) {
+                dataSource.setMinIdle(poolConfig.getMinSize());
+                dataSource.setMaxIdle(poolConfig.getMaxSize());
+            }
+            else {
+                // Idle connections would hold on to the limit of the server while other databases wait for it.
+                dataSource.setMinIdle(0);
+                dataSource.setMaxIdle(0);
+            }
+            dataSource.setMaxActive(poolConfig.getMaxSize());
+            dataSource.setMaxWait(poolConfig.getMaxWait());
+            dataSource.setMinEvictableIdleTimeMillis(poolConfig.getIdleTimeout());
+            dataSource.setTimeBetweenEvictionRunsMillis(poolConfig.getEvictionInterval());
+            if (!connectionInitSqls.isEmpty()) {
+                dataSource.setConnectionInitSqls(ImmutableList.copyOf(connectionInitSqls));
+            }
+
+            dataSources.put(key, dataSource);
+        }
+
+        return dataSource;
+    }
+
+    /**
+     * Closes the pools for all users of a JDBC url. A later request for the url creates a new pool.
+     */
+    public synchronized void close(final String url)
+    {
+        for (Iterator<Map.Entry<String, BasicDataSource>> it = dataSources.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<String, BasicDataSource> dataSource = it.next();
+            if (url.equals(dataSource.getValue().getUrl())) {
+                it.remove();
+                try {
+                    LOG.debug("Closing connection pool for {}", dataSource.getKey());
+                    dataSource.getValue().close();
+                }
+                catch (SQLException se) {
+                    LOG.warn("While closing connection pool for {}: {}", dataSource.getKey(), se);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes all pools. Connections that are still in use are closed when they are returned.
+     */
+    public synchronized void close()
+    {
+        closed = true;
+
+        for (Map.Entry<String, BasicDataSource> dataSource : dataSources.entrySet()) {
+            try {
+                LOG.debug("Closing connection pool for {}", dataSource.getKey());
+                dataSource.getValue().close();
+            }
+            catch (SQLException se) {
+                LOG.warn("While closing connection pool for {}: {}", dataSource.getKey(), se);
+            }
+        }
+        dataSources.clear();
+    }
+
+    private ServerLimit getServerLimit(final String server)
+    {
+        if (poolConfig.getMaxPerServer() <= 0) {
+            return null;
+        }
+
+        ServerLimit serverLimit = serverLimits.get(server);
+        if (serverLimit == null) {
+            serverLimit = new ServerLimit(server, poolConfig.getMaxPerServer(), poolConfig.getMaxWait());
+            serverLimits.put(server, serverLimit);
+        }
+        return serverLimit;
+    }
+
+    private static String getKey(final String url, final String user, final List<String> connectionInitSqls)
+    {
+        return connectionInitSqls.isEmpty() ? user + "@" + url : user + "@" + url + " " + connectionInitSqls;
+    }
+
+    /**
+     * Limits the open connections to all databases of a server. A permit is taken when a connection is opened
+     * and given back when it is closed for good, not when it goes back to its pool.
+     */
+    private static final class ServerLimit
+    {
+        private final String server;
+        private final int maxConnections;
+        private final long maxWait;
+        private final Semaphore permits;
+
+        private final ThreadLocal<AtomicInteger> threadConnections = new ThreadLocal<AtomicInteger>() {
+            @Override
+            protected AtomicInteger initialValue()
+            {
+                return new AtomicInteger();
+            }
+        };
+
+        ServerLimit(final String server, final int maxConnections, final long maxWait)
+        {
+            this.server = server;
+            this.maxConnections = maxConnections;
+            this.maxWait = maxWait;
+            this.permits = new Semaphore(maxConnections, true);
+        }
+
+        Connection open(final ConnectionFactory connectionFactory) throws SQLException
+        {
+            final AtomicInteger connections = threadConnections.get();
+            final boolean permit = acquire(connections.get() > 0);
+
+            boolean opened = false;
+            try {
+                final Connection connection = permitReleasingConnection(connectionFactory.createConnection(), connections, permit ? permits : null);
+                opened = true;
+                return connection;
+            }
+            finally {
+                if (!opened && permit) {
+                    permits.release();
+                }
+            }
+        }
+
+        /**
+         * Returns true if a permit was taken. A thread that already has a connection to the server, e.g. the root
+         * connection while it migrates a database, must not wait for another one. All other threads could be waiting
+         * the same way, so it goes over the limit instead.
+         */
+        private boolean acquire(final boolean nested) throws SQLException
+        {
+            if (nested) {
+                return permits.tryAcquire();
+            }
+
+            try {
+                if (!permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+                    throw new SQLException("Timeout waiting for a connection to " + server + ", all " + maxConnections + " are in use!");
+                }
+                return true;
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection to " + server);
+            }
+        }
+
+        /**
+         * Returns a connection that gives its permit back when it is closed.
+         */
+        private static Connection permitReleasingConnection(final Connection connection, final AtomicInteger connections, final Semaphore permits)
+        {
+            final AtomicBoolean released = new AtomicBoolean(false);
+            connections.incrementAndGet();
+
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?> [] { Connection.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object [] args) throws Throwable
+                {
+                    try {
+                        return method.invoke(connection, args);
+                    }
+                    catch (InvocationTargetException ite) {
+                        throw ite.getCause();
+                    }
+                    finally {
+                        if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+                            connections.decrementAndGet();
+                            if (permits != null) {
+                                permits.release();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+/**
+ * Unit of work executed for a single database by the {@link DatabaseExecutor}.
+ */
+public interface DatabaseCallback<T>
+{
+    T withDatabase(String database) throws Exception;
+}
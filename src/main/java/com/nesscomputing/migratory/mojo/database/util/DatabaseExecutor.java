@@ -0,0 +1,217 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs a {@link DatabaseCallback} for a list of databases using a bounded number of worker threads.
+ *
+ * While a callback runs, the worker thread is named after the database and the database name is
+ * available in the logging MDC under {@link #MDC_DATABASE}, so log output can be attributed
+ * to a database even when multiple databases are processed at the same time. If more than one
+ * database is processed at the same time, the log output of each database is held back briefly
+ * and written in blocks, unless grouping of the log output is turned off.
+ */
+public class DatabaseExecutor
+{
+    private static final Logger LOG = LoggerFactory.getLogger(DatabaseExecutor.class);
+
+    public static final String MDC_DATABASE = "database";
+
+    private final String name;
+    private final int parallelism;
+    private final boolean groupLogs;
+
+    public DatabaseExecutor(final String name, final int parallelism)
+    {
+        this(name, parallelism, true);
+    }
+
+    /**
+     * @param groupLogs Whether the log output of each database is written in blocks. Without it, the lines of
+     *                  databases that are processed at the same time interleave, but nothing is held in memory.
+     */
+    public DatabaseExecutor(final String name, final int parallelism, final boolean groupLogs)
+    {
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be at least 1!");
+
+        this.name = name;
+        this.parallelism = parallelism;
+        this.groupLogs = groupLogs;
+    }
+
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Executes the callback for every database. Returns the results in the order of the given databases.
+     */
+    public <T> Map<String, DatabaseResult<T>> execute(final Collection<String> databases, final DatabaseCallback<T> callback)
+        throws InterruptedException
+    {
+        final Map<String, DatabaseResult<T>> results = Maps.newLinkedHashMap();
+
+        final int threads = Math.min(parallelism, databases.size());
+
+        if (threads <= 1) {
+            for (final String database : databases) {
+                results.put(database, run(database, callback, null));
+            }
+            return results;
+        }
+
+        LOG.debug("Running {} on {} databases with {} threads", new Object [] { name, databases.size(), threads });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+        final DatabaseLogBuffer logBuffer = groupLogs ? DatabaseLogBuffer.install() : null;
+
+        try {
+            final List<Future<DatabaseResult<T>>> futures = Lists.newArrayListWithCapacity(databases.size());
+            for (final String database : databases) {
+                futures.add(executor.submit(new Callable<DatabaseResult<T>>() {
+                    @Override
+                    public DatabaseResult<T> call()
+                    {
+                        return run(database, callback, logBuffer);
+                    }
+                }));
+            }
+
+            for (final Future<DatabaseResult<T>> future : futures) {
+                try {
+                    final DatabaseResult<T> result = future.get();
+                    results.put(result.getDatabase(), result);
+                }
+                catch (ExecutionException ee) {
+                    // run() never throws, so this can only be an Error.
+                    throw new IllegalStateException(ee.getCause());
+                }
+            }
+            return results;
+        }
+        finally {
+            executor.shutdownNow();
+            if (logBuffer != null) {
+                logBuffer.uninstall();
+            }
+        }
+    }
+
+    /**
+     * Executes the callback for every database, but never works on more databases of a server at the same time
+     * than the throttle allows. A worker picks the first waiting database whose server has room, so a busy server
+     * does not hold up the databases of the other servers. Returns the results in the order of the given databases.
+     */
+    public <T> Map<String, DatabaseResult<T>> execute(final Collection<String> databases, final ServerThrottle throttle, final DatabaseCallback<T> callback)
+        throws InterruptedException
+    {
+        if (throttle == null) {
+            return execute(databases, callback);
+        }
+
+        final int threads = Math.min(parallelism, databases.size());
+        final List<String> pending = Lists.newLinkedList(databases);
+        final Map<String, DatabaseResult<T>> finished = Maps.newConcurrentMap();
+
+        LOG.debug("Running {} on {} databases with {} throttled threads", new Object [] { name, databases.size(), threads });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1), new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+        final DatabaseLogBuffer logBuffer = (groupLogs && threads > 1) ? DatabaseLogBuffer.install() : null;
+
+        try {
+            final List<Future<Void>> futures = Lists.newArrayListWithCapacity(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws InterruptedException
+                    {
+                        for (String database = throttle.take(pending); database != null; database = throttle.take(pending)) {
+                            DatabaseResult<T> result = null;
+                            try {
+                                result = run(database, callback, logBuffer);
+                                finished.put(database, result);
+                            }
+                            finally {
+                                throttle.release(database, result == null ? null : result.getException());
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            for (final Future<Void> future : futures) {
+                try {
+                    future.get();
+                }
+                catch (ExecutionException ee) {
+                    Throwables.propagateIfInstanceOf(ee.getCause(), InterruptedException.class);
+                    throw new IllegalStateException(ee.getCause());
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+            if (logBuffer != null) {
+                logBuffer.uninstall();
+            }
+        }
+
+        final Map<String, DatabaseResult<T>> results = Maps.newLinkedHashMap();
+        for (String database : databases) {
+            results.put(database, finished.get(database));
+        }
+        return results;
+    }
+
+    private <T> DatabaseResult<T> run(final String database, final DatabaseCallback<T> callback, final DatabaseLogBuffer logBuffer)
+    {
+        final Thread currentThread = Thread.currentThread();
+        final String threadName = currentThread.getName();
+
+        currentThread.setName(name + "-" + database);
+        MDC.put(MDC_DATABASE, database);
+        if (logBuffer != null) {
+            logBuffer.begin(database);
+        }
+
+        final long startTime = System.nanoTime();
+        try {
+            final T value = callback.withDatabase(database);
+            return DatabaseResult.success(database, value, elapsedMillis(startTime));
+        }
+        catch (Exception e) {
+            return DatabaseResult.failure(database, e, elapsedMillis(startTime));
+        }
+        finally {
+            MDC.remove(MDC_DATABASE);
+            currentThread.setName(threadName);
+            if (logBuffer != null) {
+                logBuffer.flush(database);
+            }
+        }
+    }
+
+    private static long elapsedMillis(final long startTime)
+    {
+        return (System.nanoTime() - startTime) / 1000000L;
+    }
+}
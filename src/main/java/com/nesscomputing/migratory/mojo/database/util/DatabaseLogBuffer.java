@@ -0,0 +1,176 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Keeps the log output of databases that are processed at the same time apart. While installed, it takes the
+ * place of the appenders of the root logger. Events that carry a database in the MDC are held back and passed on
+ * in blocks: when the database is done, when enough events are held back for it or when its oldest held event is
+ * a few seconds old, so long running databases still show progress and the memory used stays bounded. All other
+ * events are passed on right away.
+ */
+public final class DatabaseLogBuffer extends AppenderSkeleton
+{
+    /** Number of held back events of a database that are passed on as a block. */
+    private static final int MAX_EVENTS = 500;
+    /** Milliseconds after which the held back events of a database are passed on. */
+    private static final long MAX_DELAY = 5000L;
+
+    private final List<Appender> delegates;
+    private final Map<String, Buffer> buffers = Maps.newHashMap();
+    private final Timer timer = new Timer(DatabaseLogBuffer.class.getSimpleName(), true);
+
+    private DatabaseLogBuffer(final List<Appender> delegates)
+    {
+        this.delegates = delegates;
+        setName(DatabaseLogBuffer.class.getSimpleName());
+    }
+
+    /**
+     * Moves the appenders of the root logger behind a new buffer. Returns null if the root logger has no appenders.
+     */
+    public static DatabaseLogBuffer install()
+    {
+        final Logger rootLogger = Logger.getRootLogger();
+
+        final List<Appender> appenders = Lists.newArrayList();
+        for (Enumeration<?> e = rootLogger.getAllAppenders(); e.hasMoreElements(); ) {
+            appenders.add((Appender) e.nextElement());
+        }
+
+        if (appenders.isEmpty()) {
+            return null;
+        }
+
+        final DatabaseLogBuffer buffer = new DatabaseLogBuffer(appenders);
+        rootLogger.removeAllAppenders();
+        rootLogger.addAppender(buffer);
+
+        // Also passes on the events of databases that log nothing more for a while, e.g. during a long migration.
+        buffer.timer.schedule(new TimerTask() {
+            @Override
+            public void run()
+            {
+                buffer.passExpired();
+            }
+        }, MAX_DELAY, MAX_DELAY);
+        return buffer;
+    }
+
+    /**
+     * Passes on all events that are still held back and gives the root logger its appenders back.
+     */
+    public synchronized void uninstall()
+    {
+        timer.cancel();
+        for (String database : Lists.newArrayList(buffers.keySet())) {
+            flush(database);
+        }
+
+        final Logger rootLogger = Logger.getRootLogger();
+        rootLogger.removeAppender(this);
+        for (Appender appender : delegates) {
+            rootLogger.addAppender(appender);
+        }
+    }
+
+    /**
+     * Holds back all events for the database until {@link #flush(String)} is called.
+     */
+    public synchronized void begin(final String database)
+    {
+        buffers.put(database, new Buffer());
+    }
+
+    /**
+     * Passes on all events that were held back for the database as one block.
+     */
+    public synchronized void flush(final String database)
+    {
+        final Buffer buffer = buffers.remove(database);
+        if (buffer != null) {
+            pass(buffer);
+        }
+    }
+
+    @Override
+    protected synchronized void append(final LoggingEvent event)
+    {
+        final Object database = event.getMDC(DatabaseExecutor.MDC_DATABASE);
+        final Buffer buffer = (database == null) ? null : buffers.get(database);
+
+        if (buffer == null) {
+            forward(event);
+        }
+        else {
+            // The event is written later and maybe by another thread, so take everything from the current thread now.
+            event.getMDCCopy();
+            event.getNDC();
+            event.getThreadName();
+            event.getRenderedMessage();
+            event.getThrowableStrRep();
+
+            if (buffer.events.isEmpty()) {
+                buffer.firstMillis = System.currentTimeMillis();
+            }
+            buffer.events.add(event);
+            if (buffer.events.size() >= MAX_EVENTS) {
+                pass(buffer);
+            }
+        }
+    }
+
+    private synchronized void passExpired()
+    {
+        final long now = System.currentTimeMillis();
+        for (Buffer buffer : buffers.values()) {
+            if (!buffer.events.isEmpty() && now - buffer.firstMillis >= MAX_DELAY) {
+                pass(buffer);
+            }
+        }
+    }
+
+    private void pass(final Buffer buffer)
+    {
+        for (LoggingEvent event : buffer.events) {
+            forward(event);
+        }
+        buffer.events.clear();
+    }
+
+    private void forward(final LoggingEvent event)
+    {
+        for (Appender appender : delegates) {
+            appender.doAppend(event);
+        }
+    }
+
+    @Override
+    public boolean requiresLayout()
+    {
+        return false;
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    private static final class Buffer
+    {
+        private final List<LoggingEvent> events = Lists.newArrayList();
+        private long firstMillis = 0L;
+    }
+}
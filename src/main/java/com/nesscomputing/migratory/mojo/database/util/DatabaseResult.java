@@ -0,0 +1,55 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+/**
+ * Outcome of running a {@link DatabaseCallback} for a single database.
+ */
+public final class DatabaseResult<T>
+{
+    private final String database;
+    private final T value;
+    private final Exception exception;
+    private final long elapsedMillis;
+
+    private DatabaseResult(final String database, final T value, final Exception exception, final long elapsedMillis)
+    {
+        this.database = database;
+        this.value = value;
+        this.exception = exception;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public static <T> DatabaseResult<T> success(final String database, final T value, final long elapsedMillis)
+    {
+        return new DatabaseResult<T>(database, value, null, elapsedMillis);
+    }
+
+    public static <T> DatabaseResult<T> failure(final String database, final Exception exception, final long elapsedMillis)
+    {
+        return new DatabaseResult<T>(database, null, exception, elapsedMillis);
+    }
+
+    public String getDatabase()
+    {
+        return database;
+    }
+
+    public T getValue()
+    {
+        return value;
+    }
+
+    public Exception getException()
+    {
+        return exception;
+    }
+
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    public boolean isSuccess()
+    {
+        return exception == null;
+    }
+}
@@ -0,0 +1,86 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Helpers to group databases by the server that they live on.
+ */
+public final class DatabaseServer
+{
+    private static final int DEFAULT_PORT = 5432;
+
+    private DatabaseServer()
+    {
+    }
+
+    /**
+     * Returns host:port of a jdbc url such as jdbc:postgresql://host:port/database, or the url itself if it
+     * does not name a host.
+     */
+    public static String getServer(final String jdbcUrl)
+    {
+        if (jdbcUrl == null || !jdbcUrl.startsWith("jdbc:")) {
+            return jdbcUrl;
+        }
+
+        try {
+            final URI uri = URI.create(jdbcUrl.substring(5));
+            if (StringUtils.isEmpty(uri.getHost())) {
+                return jdbcUrl;
+            }
+            return uri.getHost().toLowerCase(Locale.ENGLISH) + ":" + (uri.getPort() == -1 ? DEFAULT_PORT : uri.getPort());
+        }
+        catch (IllegalArgumentException iae) {
+            return jdbcUrl;
+        }
+    }
+
+    /**
+     * Orders databases so that consecutive databases live on different servers where possible. Databases of the
+     * same server keep their relative order.
+     */
+    public static List<String> interleave(final Collection<String> databases, final Map<String, String> servers)
+    {
+        final Map<String, Iterator<String>> byServer = Maps.newLinkedHashMap();
+        final Map<String, List<String>> lists = Maps.newLinkedHashMap();
+        for (String database : databases) {
+            final String server = StringUtils.defaultString(servers.get(database));
+            List<String> list = lists.get(server);
+            if (list == null) {
+                list = Lists.newArrayList();
+                lists.put(server, list);
+            }
+            list.add(database);
+        }
+
+        if (lists.size() < 2) {
+            return Lists.newArrayList(databases);
+        }
+
+        for (Map.Entry<String, List<String>> entry : lists.entrySet()) {
+            byServer.put(entry.getKey(), entry.getValue().iterator());
+        }
+
+        final List<String> result = Lists.newArrayListWithCapacity(databases.size());
+        while (!byServer.isEmpty()) {
+            for (Iterator<Iterator<String>> it = byServer.values().iterator(); it.hasNext(); ) {
+                final Iterator<String> serverDatabases = it.next();
+                result.add(serverDatabases.next());
+                if (!serverDatabases.hasNext()) {
+                    it.remove();
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -40,4 +40,35 @@ public abstract class InitialConfig
     {
         return "ness";
     }
+
+    /**
+     * Local cache for manifests and sql files loaded from http locations. Defaults to
+     * .migratory/cache in the user's home.
+     */
+    @Config("migratory.cache.dir")
+    @DefaultNull
+    public String getCacheDir()
+    {
+        return null;
+    }
+
+    /**
+     * Whether manifests and sql files loaded from http locations are cached locally.
+     */
+    @Config("migratory.cache.enabled")
+    @Default("true")
+    public boolean isCacheEnabled()
+    {
+        return true;
+    }
+
+    /**
+     * In offline mode, manifests and sql files from http locations are only loaded from the local cache.
+     */
+    @Config("migratory.offline")
+    @Default("false")
+    public boolean isOffline()
+    {
+        return false;
+    }
 }
@@ -0,0 +1,65 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.sql.SQLException;
+import java.util.Random;
+
+/**
+ * Decides whether a failed migration ran into a lock timeout and how long to wait before trying again. The
+ * delay doubles with every attempt, a random jitter of up to one base delay keeps databases and personalities
+ * that failed at the same time from retrying in lockstep.
+ */
+public class LockRetryPolicy
+{
+    /** Postgres lock_not_available, raised when lock_timeout expires. */
+    public static final String LOCK_NOT_AVAILABLE = "55P03";
+
+    private static final long MAX_DELAY = 60000L;
+
+    private final int retries;
+    private final long baseDelay;
+    private final Random random = new Random();
+
+    public LockRetryPolicy(final int retries, final long baseDelay)
+    {
+        this.retries = retries;
+        this.baseDelay = baseDelay;
+    }
+
+    public int getRetries()
+    {
+        return retries;
+    }
+
+    /**
+     * Returns the delay in milliseconds before the given retry, starting with 1.
+     */
+    public long getDelay(final int retry)
+    {
+        final long delay = Math.min(MAX_DELAY, baseDelay << Math.min(retry - 1, 16));
+        final long jitter;
+        synchronized (random) {
+            jitter = baseDelay > 0 ? (long) (random.nextDouble() * baseDelay) : 0L;
+        }
+        return delay + jitter;
+    }
+
+    /**
+     * Returns true if the exception or one of its causes is a lock timeout reported by the database.
+     */
+    public static boolean isLockTimeout(final Throwable t)
+    {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                for (SQLException se = (SQLException) cause; se != null; se = se.getNextException()) {
+                    if (LOCK_NOT_AVAILABLE.equals(se.getSQLState())) {
+                        return true;
+                    }
+                }
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,219 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TimingCollector;
+import org.slf4j.MDC;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+/**
+ * Collects timings for everything the mojos do. Timings are aggregated by category, database,
+ * personality and name. The database and personality are taken from the logging MDC of the
+ * calling thread unless given explicitly.
+ *
+ * Also collects the execution time of every sql statement when registered as timing collector
+ * with a DBI.
+ */
+public class MetricsCollector implements TimingCollector
+{
+    public static final String MDC_PERSONALITY = "personality";
+
+    public static final String CONNECTION = "connection";
+    public static final String TEMPLATE = "template";
+    public static final String FETCH = "fetch";
+    public static final String STATEMENT = "statement";
+    public static final String MIGRATION = "migration";
+    public static final String DATABASE = "database";
+
+    private static final int MAX_NAME_LENGTH = 200;
+
+    private final ConcurrentMap<List<String>, Timing> timings = Maps.newConcurrentMap();
+
+    private volatile TimingCollector statementObserver = null;
+
+    @Override
+    public void collect(final long elapsedTime, final StatementContext ctx)
+    {
+        record(STATEMENT, ctx.getRawSql(), elapsedTime);
+
+        final TimingCollector observer = statementObserver;
+        if (observer != null) {
+            observer.collect(elapsedTime, ctx);
+        }
+    }
+
+    /**
+     * Sets a collector that is told about every statement in addition to the metrics, or null to remove it.
+     */
+    public void setStatementObserver(final TimingCollector statementObserver)
+    {
+        this.statementObserver = statementObserver;
+    }
+
+    public void record(final String category, final String name, final long elapsedNanos)
+    {
+        record(category, MDC.get(DatabaseExecutor.MDC_DATABASE), name, elapsedNanos);
+    }
+
+    public void record(final String category, final String database, final String name, final long elapsedNanos)
+    {
+        final List<String> key = ImmutableList.of(category,
+                                                  StringUtils.defaultString(database),
+                                                  StringUtils.defaultString(MDC.get(MDC_PERSONALITY)),
+                                                  StringUtils.abbreviate(StringUtils.normalizeSpace(StringUtils.defaultString(name)), MAX_NAME_LENGTH));
+
+        Timing timing = timings.get(key);
+        if (timing == null) {
+            timing = new Timing();
+            final Timing existing = timings.putIfAbsent(key, timing);
+            if (existing != null) {
+                timing = existing;
+            }
+        }
+        timing.add(elapsedNanos);
+    }
+
+    /**
+     * Writes all timings to the given file, as CSV if the file name ends in .csv and as JSON otherwise.
+     */
+    public void write(final File file) throws IOException
+    {
+        final Map<List<String>, Timing> sortedTimings = Maps.newTreeMap(new KeyComparator());
+        sortedTimings.putAll(timings);
+
+        final boolean csv = file.getName().toLowerCase(Locale.ENGLISH).endsWith(".csv");
+        final StringBuilder sb = new StringBuilder();
+
+        if (csv) {
+            sb.append("category,database,personality,name,count,total_ms,max_ms\n");
+        }
+        else {
+            sb.append("[\n");
+        }
+
+        final List<String> lines = Lists.newArrayListWithCapacity(sortedTimings.size());
+        for (Map.Entry<List<String>, Timing> entry : sortedTimings.entrySet()) {
+            final List<String> key = entry.getKey();
+            final Timing timing = entry.getValue();
+
+            if (csv) {
+                lines.add(String.format("%s,%s,%s,%s,%d,%.3f,%.3f",
+                                        csvQuote(key.get(0)), csvQuote(key.get(1)), csvQuote(key.get(2)), csvQuote(key.get(3)),
+                                        timing.getCount(), toMillis(timing.getTotal()), toMillis(timing.getMax())));
+            }
+            else {
+                lines.add(String.format("  {\"category\": %s, \"database\": %s, \"personality\": %s, \"name\": %s, \"count\": %d, \"total_ms\": %.3f, \"max_ms\": %.3f}",
+                                        jsonQuote(key.get(0)), jsonQuote(key.get(1)), jsonQuote(key.get(2)), jsonQuote(key.get(3)),
+                                        timing.getCount(), toMillis(timing.getTotal()), toMillis(timing.getMax())));
+            }
+        }
+
+        if (csv) {
+            Joiner.on('\n').appendTo(sb, lines);
+            sb.append('\n');
+        }
+        else {
+            Joiner.on(",\n").appendTo(sb, lines);
+            sb.append("\n]\n");
+        }
+
+        Files.createParentDirs(file);
+        Files.write(sb, file, Charsets.UTF_8);
+    }
+
+    private static double toMillis(final long nanos)
+    {
+        return nanos / 1000000.0d;
+    }
+
+    private static String csvQuote(final String value)
+    {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String jsonQuote(final String value)
+    {
+        final StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                }
+                else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static final class Timing
+    {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        private void add(final long elapsedNanos)
+        {
+            count.incrementAndGet();
+            total.addAndGet(elapsedNanos);
+
+            long currentMax;
+            do {
+                currentMax = max.get();
+            } while (elapsedNanos > currentMax && !max.compareAndSet(currentMax, elapsedNanos));
+        }
+
+        private long getCount()
+        {
+            return count.get();
+        }
+
+        private long getTotal()
+        {
+            return total.get();
+        }
+
+        private long getMax()
+        {
+            return max.get();
+        }
+    }
+
+    private static final class KeyComparator implements Comparator<List<String>>
+    {
+        @Override
+        public int compare(final List<String> a, final List<String> b)
+        {
+            for (int i = 0; i < a.size(); i++) {
+                final int result = a.get(i).compareTo(b.get(i));
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.nesscomputing.migratory.locator.MigrationLocator;
+import com.nesscomputing.migratory.migration.Migration;
+
+/**
+ * Run scoped catalog of the migrations for each personality. The first database that asks for a
+ * personality locates, loads and parses its migrations, all other databases reuse the result.
+ */
+public class MigrationCatalog
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MigrationCatalog.class);
+
+    private final ConcurrentMap<Map.Entry<String, String>, CatalogEntry> entries = Maps.newConcurrentMap();
+
+    /**
+     * Returns a locator that serves migrations from the catalog and uses the given locator to fill it.
+     */
+    public MigrationLocator wrap(final MigrationLocator locator)
+    {
+        return new MigrationLocator() {
+            @Override
+            public boolean contributeMigrations(final Map<String, Migration> migrations, final String personalityName, final String databaseType)
+            {
+                return getEntry(personalityName, databaseType).contributeMigrations(locator, migrations);
+            }
+        };
+    }
+
+    private CatalogEntry getEntry(final String personalityName, final String databaseType)
+    {
+        final Map.Entry<String, String> key = Maps.immutableEntry(personalityName, databaseType);
+
+        CatalogEntry entry = entries.get(key);
+        if (entry == null) {
+            entry = new CatalogEntry(personalityName, databaseType);
+            final CatalogEntry existing = entries.putIfAbsent(key, entry);
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+        return entry;
+    }
+
+    private static final class CatalogEntry
+    {
+        private final String personalityName;
+        private final String databaseType;
+
+        private boolean loaded = false;
+        private boolean found = false;
+        private Map<String, Migration> migrations = ImmutableMap.of();
+
+        private CatalogEntry(final String personalityName, final String databaseType)
+        {
+            this.personalityName = personalityName;
+            this.databaseType = databaseType;
+        }
+
+        private synchronized boolean contributeMigrations(final MigrationLocator locator, final Map<String, Migration> target)
+        {
+            if (!loaded) {
+                final Map<String, Migration> located = Maps.newHashMap();
+                found = locator.contributeMigrations(located, personalityName, databaseType);
+                migrations = ImmutableMap.copyOf(located);
+                loaded = true;
+
+                LOG.debug("Located {} migrations for {}", migrations.size(), personalityName);
+            }
+
+            target.putAll(migrations);
+            return found;
+        }
+    }
+}
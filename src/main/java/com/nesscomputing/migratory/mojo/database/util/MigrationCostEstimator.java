@@ -0,0 +1,349 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.exceptions.DBIException;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.skife.jdbi.v2.util.StringMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Estimates the cost of the statements in a migration script without running them. DML is explained, for
+ * DDL the lock it takes and whether it rewrites or scans the table is derived from the statement. The size of the
+ * affected table comes from the planner statistics in pg_class.
+ */
+public class MigrationCostEstimator
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MigrationCostEstimator.class);
+
+    public static final String ACCESS_EXCLUSIVE = "ACCESS EXCLUSIVE";
+    public static final String SHARE = "SHARE";
+    public static final String SHARE_UPDATE_EXCLUSIVE = "SHARE UPDATE EXCLUSIVE";
+    public static final String ROW_EXCLUSIVE = "ROW EXCLUSIVE";
+
+    /** A relation name, optionally schema qualified, each part plain or quoted. */
+    static final String TABLE = "((?:\"[^\"]+\"|\\w+)(?:\\.(?:\"[^\"]+\"|\\w+))?)";
+
+    private static final Pattern DML = Pattern.compile("^(?:WITH\\s.*?\\)\\s*)?(UPDATE|DELETE|INSERT)\\s+(?:FROM\\s+|INTO\\s+)?(?:ONLY\\s+)?" + TABLE, Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern ALTER_TABLE = Pattern.compile("^ALTER\\s+TABLE\\s+(?:IF\\s+EXISTS\\s+)?(?:ONLY\\s+)?" + TABLE, Pattern.CASE_INSENSITIVE);
+    private static final Pattern CREATE_INDEX = Pattern.compile("^CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(CONCURRENTLY\\s+)?.*?\\sON\\s+(?:ONLY\\s+)?" + TABLE, Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern EXCLUSIVE = Pattern.compile("^(DROP\\s+TABLE\\s+(?:IF\\s+EXISTS\\s+)?|TRUNCATE\\s+(?:TABLE\\s+)?(?:ONLY\\s+)?|CLUSTER\\s+|VACUUM\\s+FULL\\s+|REINDEX\\s+TABLE\\s+)" + TABLE, Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern REWRITING_ALTER = Pattern.compile("(\\sTYPE\\s|\\sSET\\s+TABLESPACE\\s)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern ADD_DEFAULT = Pattern.compile("\\sADD\\s+(?:COLUMN\\s+)?.*\\sDEFAULT\\s", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern VOLATILE_COLUMN = Pattern.compile("\\sADD\\s+(?:COLUMN\\s+)?.*(?:\\sDEFAULT\\s.*\\b(?:random|clock_timestamp|timeofday|nextval|gen_random_uuid|uuid_generate_v\\w+|txid_current)\\s*\\(|\\s(?:BIG|SMALL)?SERIAL\\b|\\sGENERATED\\s)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern SCANNING_ALTER = Pattern.compile("(\\sSET\\s+NOT\\s+NULL\\b|\\sADD\\s+(?:CONSTRAINT\\s+(?:\"[^\"]+\"|\\w+)\\s+)?(?:CHECK|FOREIGN\\s+KEY)\\b)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern NOT_VALID = Pattern.compile("\\sNOT\\s+VALID\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ROWS = Pattern.compile("rows=(\\d+)");
+
+    /**
+     * Returns an estimate for each statement of the script. The DBI must use the mojo statement templates. The whole
+     * script is estimated on one handle and the statistics of each table are only read once.
+     */
+    public List<CostEstimate> estimate(final DBI dbi, final String scriptName, final String script)
+    {
+        return dbi.withHandle(new HandleCallback<List<CostEstimate>>() {
+            @Override
+            public List<CostEstimate> withHandle(final Handle handle) {
+                return estimate(handle, scriptName, script);
+            }
+        });
+    }
+
+    private List<CostEstimate> estimate(final Handle handle, final String scriptName, final String script)
+    {
+        final List<CostEstimate> estimates = Lists.newArrayList();
+        final Map<String, Map<String, Object>> statisticsCache = Maps.newHashMap();
+        Boolean fastDefaults = null;
+
+        for (String statement : splitStatements(script)) {
+            final String sql = statement.replaceAll("\\s+", " ").trim();
+
+            Matcher matcher = DML.matcher(sql);
+            if (matcher.find()) {
+                final String table = matcher.group(2);
+                final Map<String, Object> statistics = getStatistics(handle, table, statisticsCache);
+                estimates.add(new CostEstimate(scriptName, matcher.group(1).toUpperCase(Locale.ENGLISH), table, ROW_EXCLUSIVE, false, false, explain(handle, statement), get(statistics, "pages")));
+                continue;
+            }
+
+            matcher = ALTER_TABLE.matcher(sql);
+            if (matcher.find()) {
+                final String table = matcher.group(1);
+                boolean rewrite = REWRITING_ALTER.matcher(sql).find() || VOLATILE_COLUMN.matcher(sql).find();
+                if (!rewrite && ADD_DEFAULT.matcher(sql).find()) {
+                    if (fastDefaults == null) {
+                        fastDefaults = hasFastDefaults(handle);
+                    }
+                    rewrite = !fastDefaults;
+                }
+                final boolean scan = !rewrite && SCANNING_ALTER.matcher(sql).find() && !NOT_VALID.matcher(sql).find();
+                final Map<String, Object> statistics = getStatistics(handle, table, statisticsCache);
+                estimates.add(new CostEstimate(scriptName, "ALTER", table, ACCESS_EXCLUSIVE, rewrite, scan, get(statistics, "tuples"), get(statistics, "pages")));
+                continue;
+            }
+
+            matcher = CREATE_INDEX.matcher(sql);
+            if (matcher.find()) {
+                final String table = matcher.group(2);
+                final boolean concurrently = matcher.group(1) != null;
+                final Map<String, Object> statistics = getStatistics(handle, table, statisticsCache);
+                estimates.add(new CostEstimate(scriptName, "INDEX", table, concurrently ? SHARE_UPDATE_EXCLUSIVE : SHARE, false, true, get(statistics, "tuples"), get(statistics, "pages")));
+                continue;
+            }
+
+            matcher = EXCLUSIVE.matcher(sql);
+            if (matcher.find()) {
+                final String kind = StringUtils.substringBefore(matcher.group(1).trim(), " ").toUpperCase(Locale.ENGLISH);
+                final String table = matcher.group(2);
+                final boolean rewrite = "CLUSTER".equals(kind) || "VACUUM".equals(kind);
+                final Map<String, Object> statistics = getStatistics(handle, table, statisticsCache);
+                estimates.add(new CostEstimate(scriptName, kind, table, ACCESS_EXCLUSIVE, rewrite, "REINDEX".equals(kind), get(statistics, "tuples"), get(statistics, "pages")));
+            }
+        }
+        return estimates;
+    }
+
+    /**
+     * Returns the highest row estimate of the plan, or null if the statement could not be explained, e.g. because
+     * its table is created by a pending migration. EXPLAIN without ANALYZE does not run the statement, so it needs
+     * no transaction of its own.
+     */
+    private Long explain(final Handle handle, final String statement)
+    {
+        try {
+            final List<String> plan = handle.createQuery("EXPLAIN " + statement)
+            .map(StringMapper.FIRST)
+            .list();
+
+            long rows = 0L;
+            for (String line : plan) {
+                final Matcher matcher = ROWS.matcher(line);
+                while (matcher.find()) {
+                    rows = Math.max(rows, Long.parseLong(matcher.group(1)));
+                }
+            }
+            return rows;
+        }
+        catch (DBIException de) {
+            LOG.debug("Could not explain {}: {}", statement, de);
+            return null;
+        }
+    }
+
+    /**
+     * Since Postgres 11, adding a column with a non-volatile default only updates the catalog. Older servers
+     * rewrite the table. Assumes the older behaviour if the version can not be read.
+     */
+    private boolean hasFastDefaults(final Handle handle)
+    {
+        try {
+            final String version = handle.createQuery("SHOW server_version_num")
+            .map(StringMapper.FIRST)
+            .first();
+            return version != null && Integer.parseInt(version.trim(), 10) >= 110000;
+        }
+        catch (DBIException de) {
+            LOG.debug("Could not read the server version: {}", de);
+            return false;
+        }
+        catch (NumberFormatException nfe) {
+            LOG.debug("Could not parse the server version: {}", nfe);
+            return false;
+        }
+    }
+
+    private static Long get(final Map<String, Object> statistics, final String column)
+    {
+        final Object value = (statistics == null) ? null : statistics.get(column);
+        return value == null ? null : ((Number) value).longValue();
+    }
+
+    /**
+     * Returns the planner statistics of a table, or null if the table does not exist. Results, also missing ones,
+     * are kept in the cache.
+     */
+    private Map<String, Object> getStatistics(final Handle handle, final String table, final Map<String, Map<String, Object>> statisticsCache)
+    {
+        if (statisticsCache.containsKey(table)) {
+            return statisticsCache.get(table);
+        }
+
+        final String schemaName = table.contains(".") ? unquote(StringUtils.substringBefore(table, ".")) : null;
+        final String tableName = unquote(table.contains(".") ? StringUtils.substringAfter(table, ".") : table);
+
+        Map<String, Object> statistics = null;
+        try {
+            statistics = handle.createQuery("#mojo:table_statistics")
+            .define("schema", schemaName != null)
+            .bind("schema_name", schemaName)
+            .bind("table_name", tableName)
+            .first();
+        }
+        catch (DBIException de) {
+            LOG.debug("Could not read statistics for {}: {}", table, de);
+        }
+        statisticsCache.put(table, statistics);
+        return statistics;
+    }
+
+    static String unquote(final String name)
+    {
+        return (name.startsWith("\"") && name.endsWith("\"")) ? name.substring(1, name.length() - 1) : name.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Splits a script into statements at semicolons outside of quotes, dollar quotes and comments. Comments are removed.
+     */
+    static List<String> splitStatements(final String script)
+    {
+        final List<String> statements = Lists.newArrayList();
+        final StringBuilder current = new StringBuilder();
+
+        int i = 0;
+        while (i < script.length()) {
+            final char c = script.charAt(i);
+
+            if (c == '-' && script.startsWith("--", i)) {
+                final int end = script.indexOf('\n', i);
+                i = (end < 0) ? script.length() : end;
+            }
+            else if (c == '/' && script.startsWith("/*", i)) {
+                final int end = script.indexOf("*/", i + 2);
+                i = (end < 0) ? script.length() : end + 2;
+                current.append(' ');
+            }
+            else if (c == '\'' || c == '"') {
+                final int end = script.indexOf(c, i + 1);
+                final int next = (end < 0) ? script.length() : end + 1;
+                current.append(script, i, next);
+                i = next;
+            }
+            else if (c == '$') {
+                final int tagEnd = script.indexOf('$', i + 1);
+                final String tag = (tagEnd < 0) ? null : script.substring(i, tagEnd + 1);
+                if (tag != null && tag.matches("\\$\\w*\\$")) {
+                    final int end = script.indexOf(tag, tagEnd + 1);
+                    final int next = (end < 0) ? script.length() : end + tag.length();
+                    current.append(script, i, next);
+                    i = next;
+                }
+                else {
+                    current.append(c);
+                    i++;
+                }
+            }
+            else if (c == ';') {
+                addStatement(statements, current);
+                i++;
+            }
+            else {
+                current.append(c);
+                i++;
+            }
+        }
+        addStatement(statements, current);
+        return statements;
+    }
+
+    private static void addStatement(final List<String> statements, final StringBuilder current)
+    {
+        final String statement = current.toString().trim();
+        if (statement.length() > 0) {
+            statements.add(statement);
+        }
+        current.setLength(0);
+    }
+
+    public static class CostEstimate
+    {
+        private final String scriptName;
+        private final String kind;
+        private final String table;
+        private final String lock;
+        private final boolean rewrite;
+        private final boolean scan;
+        private final Long rows;
+        private final Long pages;
+
+        CostEstimate(final String scriptName, final String kind, final String table, final String lock, final boolean rewrite, final boolean scan, final Long rows, final Long pages)
+        {
+            this.scriptName = scriptName;
+            this.kind = kind;
+            this.table = table;
+            this.lock = lock;
+            this.rewrite = rewrite;
+            this.scan = scan;
+            this.rows = rows;
+            this.pages = pages;
+        }
+
+        public String getScriptName()
+        {
+            return scriptName;
+        }
+
+        public String getKind()
+        {
+            return kind;
+        }
+
+        public String getTable()
+        {
+            return table;
+        }
+
+        public String getLock()
+        {
+            return lock;
+        }
+
+        public boolean isRewrite()
+        {
+            return rewrite;
+        }
+
+        /**
+         * True if the statement reads the whole table without rewriting it, e.g. to validate a constraint or to build an index.
+         */
+        public boolean isScan()
+        {
+            return scan;
+        }
+
+        /**
+         * Rows touched by DML according to the planner, rows in the table for DDL. Null if unknown.
+         */
+        public Long getRows()
+        {
+            return rows;
+        }
+
+        /**
+         * Size of the table in pages according to pg_class. Null if unknown.
+         */
+        public Long getPages()
+        {
+            return pages;
+        }
+
+        /**
+         * True if the statement blocks writes to an existing table.
+         */
+        public boolean isBlocking()
+        {
+            return pages != null && (ACCESS_EXCLUSIVE.equals(lock) || SHARE.equals(lock));
+        }
+    }
+}
@@ -19,6 +19,14 @@ public class MojoLocator extends AbstractSqlResourceLocator
 
     @Override
     protected Map.Entry<URI, String> getBaseInformation(final String personalityName, final String databaseType)
+    {
+        return getBaseInformation(manifestUrl, personalityName);
+    }
+
+    /**
+     * Returns the location and the file pattern of the sql files for a personality.
+     */
+    public static Map.Entry<URI, String> getBaseInformation(final String manifestUrl, final String personalityName)
     {
         final StringBuilder location = new StringBuilder(manifestUrl);
         if (!manifestUrl.endsWith("/")) {
@@ -0,0 +1,29 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import org.skife.jdbi.v2.DBI;
+
+import com.nesscomputing.migratory.Migratory;
+import com.nesscomputing.migratory.MigratoryConfig;
+import com.nesscomputing.migratory.loader.LoaderManager;
+
+/**
+ * Migratory that loads all migration resources through the loader manager of the mojo
+ * instead of its own, so that caching loaders apply to the migration scripts as well.
+ */
+public class MojoMigratory extends Migratory
+{
+    private final LoaderManager loaderManager;
+
+    public MojoMigratory(final MigratoryConfig migratoryConfig, final DBI dbi, final DBI rootDbi, final LoaderManager loaderManager)
+    {
+        super(migratoryConfig, dbi, rootDbi);
+        this.loaderManager = loaderManager;
+    }
+
+    @Override
+    public LoaderManager getLoaderManager()
+    {
+        // The super constructor may ask for the loader manager before this class is initialized.
+        return loaderManager != null ? loaderManager : super.getLoaderManager();
+    }
+}
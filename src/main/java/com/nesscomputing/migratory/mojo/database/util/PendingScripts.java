@@ -0,0 +1,135 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.nesscomputing.migratory.loader.LoaderManager;
+
+/**
+ * Finds the sql scripts of a personality that a migration from one version to another would run. Scripts are
+ * named &lt;personality&gt;.&lt;version&gt;.sql, which migrates from version - 1 to version, or
+ * &lt;personality&gt;.&lt;start&gt;-&lt;end&gt;.sql. Templates are not included.
+ *
+ * Like the migratory planner, the path starts at the current version and always takes the script that
+ * starts there and gets furthest without passing the target version.
+ */
+public final class PendingScripts
+{
+    private static final Pattern SCRIPT_VERSION = Pattern.compile("\\.(\\d+)(?:-(\\d+))?\\.sql$");
+
+    private PendingScripts()
+    {
+    }
+
+    /**
+     * Returns the scripts on the path from the current to the target version, in the order they run. The path ends
+     * early if no script starts at a version on the way.
+     */
+    public static List<PendingScript> getScripts(final LoaderManager loaderManager, final String manifestUrl, final String personality,
+                                                 final int currentVersion, final int targetVersion)
+    {
+        final List<PendingScript> scripts = Lists.newArrayList();
+        if (targetVersion <= currentVersion) {
+            return scripts;
+        }
+
+        final Map.Entry<URI, String> baseInformation = MojoLocator.getBaseInformation(manifestUrl, personality);
+        final Collection<URI> uris = loaderManager.loadFolder(baseInformation.getKey(), baseInformation.getValue());
+        if (uris == null) {
+            return scripts;
+        }
+
+        final List<PendingScript> candidates = Lists.newArrayList();
+        for (URI uri : Sets.newTreeSet(uris)) {
+            final Matcher versionMatcher = SCRIPT_VERSION.matcher(uri.getPath());
+            if (!versionMatcher.find()) {
+                continue;
+            }
+
+            final int startVersion;
+            final int endVersion;
+            if (versionMatcher.group(2) == null) {
+                endVersion = Integer.parseInt(versionMatcher.group(1), 10);
+                startVersion = endVersion - 1;
+            }
+            else {
+                startVersion = Integer.parseInt(versionMatcher.group(1), 10);
+                endVersion = Integer.parseInt(versionMatcher.group(2), 10);
+            }
+
+            if (startVersion >= currentVersion && endVersion > startVersion && endVersion <= targetVersion) {
+                candidates.add(new PendingScript(uri, startVersion, endVersion));
+            }
+        }
+
+        int version = currentVersion;
+        while (version < targetVersion) {
+            PendingScript next = null;
+            for (PendingScript candidate : candidates) {
+                if (candidate.getStartVersion() == version && (next == null || candidate.getEndVersion() > next.getEndVersion())) {
+                    next = candidate;
+                }
+            }
+
+            if (next == null) {
+                break;
+            }
+
+            next.contents = loaderManager.loadFile(next.getUri());
+            scripts.add(next);
+            version = next.getEndVersion();
+        }
+        return scripts;
+    }
+
+    public static final class PendingScript
+    {
+        private final URI uri;
+        private final int startVersion;
+        private final int endVersion;
+        private String contents = null;
+
+        PendingScript(final URI uri, final int startVersion, final int endVersion)
+        {
+            this.uri = uri;
+            this.startVersion = startVersion;
+            this.endVersion = endVersion;
+        }
+
+        public URI getUri()
+        {
+            return uri;
+        }
+
+        public String getName()
+        {
+            return StringUtils.substringAfterLast(uri.getPath(), "/");
+        }
+
+        public int getStartVersion()
+        {
+            return startVersion;
+        }
+
+        public int getEndVersion()
+        {
+            return endVersion;
+        }
+
+        /**
+         * Contents of the script, null if it could not be loaded.
+         */
+        public String getContents()
+        {
+            return contents;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+
+/**
+ * Settings for the connection pools that back all database access of the mojos.
+ * There is one pool per JDBC url and user, the pools of a server share an optional limit.
+ */
+public abstract class PoolConfig
+{
+    /**
+     * Minimum number of idle connections kept in each pool. Ignored if there is a limit per server.
+     */
+    @Config("migratory.pool.min-size")
+    @Default("0")
+    public int getMinSize()
+    {
+        return 0;
+    }
+
+    /**
+     * Maximum number of connections that a pool hands out at the same time.
+     */
+    @Config("migratory.pool.max-size")
+    @Default("8")
+    public int getMaxSize()
+    {
+        return 8;
+    }
+
+    /**
+     * Time in milliseconds that a connection may be idle before it is evicted from the pool.
+     */
+    @Config("migratory.pool.idle-timeout")
+    @Default("60000")
+    public long getIdleTimeout()
+    {
+        return 60000L;
+    }
+
+    /**
+     * Time in milliseconds between two runs of the idle connection evictor.
+     */
+    @Config("migratory.pool.eviction-interval")
+    @Default("30000")
+    public long getEvictionInterval()
+    {
+        return 30000L;
+    }
+
+    /**
+     * Maximum number of open connections to all databases of one server, across all users. The pools do not keep
+     * idle connections while there is a limit, so that a database that is done does not hold on to it. A thread that
+     * already has a connection to the server gets a second one even if the limit is reached. 0 means no limit.
+     * The number of databases per server is limited separately by the server.parallelism parameter.
+     */
+    @Config("migratory.pool.max-per-server")
+    @Default("0")
+    public int getMaxPerServer()
+    {
+        return 0;
+    }
+
+    /**
+     * Time in milliseconds to wait for a connection when a pool or a server is at its limit.
+     */
+    @Config("migratory.pool.max-wait")
+    @Default("60000")
+    public long getMaxWait()
+    {
+        return 60000L;
+    }
+}
@@ -0,0 +1,161 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.nesscomputing.migratory.loader.LoaderManager;
+import com.nesscomputing.migratory.loader.MigrationLoader;
+
+/**
+ * Wraps a {@link LoaderManager} and keeps everything it loaded in memory for the lifetime of the loader.
+ * Folders and their files can be loaded concurrently up front using {@link #prefetch(Collection, int)}.
+ */
+public class PrefetchingLoader implements MigrationLoader
+{
+    private static final Logger LOG = LoggerFactory.getLogger(PrefetchingLoader.class);
+
+    private final LoaderManager delegate;
+    private final MetricsCollector metricsCollector;
+
+    private final ConcurrentMap<Map.Entry<URI, String>, Collection<URI>> folders = Maps.newConcurrentMap();
+    private final ConcurrentMap<URI, String> files = Maps.newConcurrentMap();
+
+    public PrefetchingLoader(final LoaderManager delegate, final MetricsCollector metricsCollector)
+    {
+        this.delegate = delegate;
+        this.metricsCollector = metricsCollector;
+    }
+
+    @Override
+    public boolean accept(final URI uri)
+    {
+        return delegate.accept(uri);
+    }
+
+    @Override
+    public Collection<URI> loadFolder(final URI folderUri, final String searchPattern)
+    {
+        final Map.Entry<URI, String> key = Maps.immutableEntry(folderUri, searchPattern);
+
+        Collection<URI> uris = folders.get(key);
+        if (uris == null) {
+            final long startTime = System.nanoTime();
+            final Collection<URI> loadedUris = delegate.loadFolder(folderUri, searchPattern);
+            metricsCollector.record(MetricsCollector.FETCH, null, folderUri + "/" + searchPattern, System.nanoTime() - startTime);
+            if (loadedUris == null) {
+                return null;
+            }
+
+            uris = Collections.unmodifiableList(Lists.newArrayList(loadedUris));
+            final Collection<URI> existing = folders.putIfAbsent(key, uris);
+            if (existing != null) {
+                uris = existing;
+            }
+        }
+        return uris;
+    }
+
+    @Override
+    public String loadFile(final URI fileUri)
+    {
+        String contents = files.get(fileUri);
+        if (contents == null) {
+            final long startTime = System.nanoTime();
+            contents = delegate.loadFile(fileUri);
+            metricsCollector.record(MetricsCollector.FETCH, null, fileUri.toString(), System.nanoTime() - startTime);
+            if (contents == null) {
+                return null;
+            }
+
+            final String existing = files.putIfAbsent(fileUri, contents);
+            if (existing != null) {
+                contents = existing;
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * Loads the given folders and all files in them using up to parallelism threads. Any problem is
+     * only logged, the same location will be loaded (and fail) again when it is actually used.
+     */
+    public void prefetch(final Collection<Map.Entry<URI, String>> folderLocations, final int parallelism)
+        throws InterruptedException
+    {
+        if (folderLocations.isEmpty()) {
+            return;
+        }
+
+        final long startTime = System.nanoTime();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism), new ThreadFactoryBuilder().setNameFormat("prefetch-%d").setDaemon(true).build());
+
+        try {
+            final List<Future<Collection<URI>>> folderFutures = Lists.newArrayList();
+            for (final Map.Entry<URI, String> folderLocation : folderLocations) {
+                folderFutures.add(executor.submit(new Callable<Collection<URI>>() {
+                    @Override
+                    public Collection<URI> call()
+                    {
+                        return loadFolder(folderLocation.getKey(), folderLocation.getValue());
+                    }
+                }));
+            }
+
+            final Set<URI> fileUris = Sets.newLinkedHashSet();
+            for (Future<Collection<URI>> folderFuture : folderFutures) {
+                final Collection<URI> uris = getQuietly(folderFuture);
+                if (uris != null) {
+                    fileUris.addAll(uris);
+                }
+            }
+
+            final List<Future<String>> fileFutures = Lists.newArrayList();
+            for (final URI fileUri : fileUris) {
+                fileFutures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call()
+                    {
+                        return loadFile(fileUri);
+                    }
+                }));
+            }
+
+            for (Future<String> fileFuture : fileFutures) {
+                getQuietly(fileFuture);
+            }
+
+            LOG.debug("Prefetched {} folders and {} files in {} ms", new Object [] { folderLocations.size(), fileUris.size(), (System.nanoTime() - startTime) / 1000000L });
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T getQuietly(final Future<T> future) throws InterruptedException
+    {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException ee) {
+            LOG.debug("While prefetching: {}", ee.getCause());
+            return null;
+        }
+    }
+}
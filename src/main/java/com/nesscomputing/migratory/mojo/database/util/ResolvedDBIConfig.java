@@ -0,0 +1,103 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+/**
+ * Immutable {@link DBIConfig} whose values were resolved from the configuration once. Reading
+ * a value does not touch the configuration again.
+ */
+public final class ResolvedDBIConfig implements DBIConfig
+{
+    private final String driverClass;
+    private final String url;
+    private final String user;
+    private final String password;
+    private final String tablespace;
+
+    public ResolvedDBIConfig(final String driverClass, final String url, final String user, final String password, final String tablespace)
+    {
+        this.driverClass = driverClass;
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.tablespace = tablespace;
+    }
+
+    /**
+     * Resolves all values of the given config.
+     */
+    public static ResolvedDBIConfig copyOf(final DBIConfig dbiConfig)
+    {
+        if (dbiConfig instanceof ResolvedDBIConfig) {
+            return (ResolvedDBIConfig) dbiConfig;
+        }
+
+        return new ResolvedDBIConfig(dbiConfig.getDBDriverClass(),
+                                     dbiConfig.getDBUrl(),
+                                     dbiConfig.getDBUser(),
+                                     dbiConfig.getDBPassword(),
+                                     dbiConfig.getDBTablespace());
+    }
+
+    @Override
+    public String getDBDriverClass()
+    {
+        return driverClass;
+    }
+
+    @Override
+    public String getDBUrl()
+    {
+        return url;
+    }
+
+    @Override
+    public String getDBUser()
+    {
+        return user;
+    }
+
+    @Override
+    public String getDBPassword()
+    {
+        return password;
+    }
+
+    @Override
+    public String getDBTablespace()
+    {
+        return tablespace;
+    }
+
+    @Override
+    public boolean equals(final Object other)
+    {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ResolvedDBIConfig)) {
+            return false;
+        }
+
+        final ResolvedDBIConfig that = (ResolvedDBIConfig) other;
+        return ObjectUtils.equals(driverClass, that.driverClass)
+            && ObjectUtils.equals(url, that.url)
+            && ObjectUtils.equals(user, that.user)
+            && ObjectUtils.equals(password, that.password)
+            && ObjectUtils.equals(tablespace, that.tablespace);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return new HashCodeBuilder().append(driverClass).append(url).append(user).append(password).append(tablespace).toHashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        // Never print the password.
+        return "DBIConfig[driver=" + driverClass + ", url=" + url + ", user=" + user + ", tablespace=" + tablespace + "]";
+    }
+}
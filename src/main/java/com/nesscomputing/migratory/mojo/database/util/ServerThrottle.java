@@ -0,0 +1,238 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TimingCollector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Limits the number of databases that are worked on at the same time per database server.
+ *
+ * In adaptive mode, the limit of a server starts at the maximum and is halved whenever the server gets slow,
+ * or when a database fails with a connection problem. Every database that finishes while the server is healthy
+ * raises the limit by one again. Latency is judged per statement: each statement keeps a moving average of its
+ * execution time and the lowest such average as its baseline. The server is slow once at least half of the
+ * statements with enough samples run at more than three times their baseline, so a change in the mix of
+ * statements does not count as a slow server. The statement latency is collected as a {@link TimingCollector},
+ * the server of a statement is found through the database in the logging MDC.
+ */
+public class ServerThrottle implements TimingCollector
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ServerThrottle.class);
+
+    /** Latency is considered rising once the average exceeds the baseline by this factor. */
+    private static final double LATENCY_FACTOR = 3.0;
+    /** Weight of a new sample in the moving average. */
+    private static final double ALPHA = 0.2;
+    /** Number of runs of a statement before its latency is judged. */
+    private static final int MIN_SAMPLES = 20;
+    /** Minimum time between two reductions of the limit of a server. */
+    private static final long COOLDOWN_NANOS = 5000000000L;
+
+    private final Map<String, String> servers;
+    private final int maxPerServer;
+    private final boolean adaptive;
+
+    private final Map<String, ServerState> states = Maps.newHashMap();
+
+    /**
+     * @param servers Maps every database to its server.
+     * @param maxPerServer Maximum number of databases per server that are worked on at the same time.
+     * @param adaptive Whether the limit shrinks when the server shows signs of overload.
+     */
+    public ServerThrottle(final Map<String, String> servers, final int maxPerServer, final boolean adaptive)
+    {
+        this.servers = ImmutableMap.copyOf(servers);
+        this.maxPerServer = maxPerServer;
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Removes and returns the first database from the list whose server has room for another database. Waits
+     * until a database is finished if there is none. Returns null once the list is empty.
+     */
+    public synchronized String take(final List<String> pending) throws InterruptedException
+    {
+        while (!pending.isEmpty()) {
+            for (Iterator<String> it = pending.iterator(); it.hasNext(); ) {
+                final String database = it.next();
+                final ServerState state = getState(getServer(database));
+                if (state.inFlight < state.limit) {
+                    it.remove();
+                    state.inFlight++;
+                    return database;
+                }
+            }
+            wait();
+        }
+        return null;
+    }
+
+    /**
+     * Must be called for every database returned by {@link #take(List)} once its work is done.
+     */
+    public synchronized void release(final String database, final Exception failure)
+    {
+        final String server = getServer(database);
+        final ServerState state = getState(server);
+        state.inFlight--;
+
+        if (adaptive) {
+            if (failure != null && isConnectionFailure(failure)) {
+                decrease(server, state, "connection failure");
+            }
+            else if (state.limit < maxPerServer && !state.isSlow()) {
+                state.limit++;
+                LOG.debug("Raising limit for {} to {}", server, state.limit);
+            }
+        }
+        notifyAll();
+    }
+
+    @Override
+    public void collect(final long elapsedTime, final StatementContext ctx)
+    {
+        if (!adaptive) {
+            return;
+        }
+
+        final String database = MDC.get(DatabaseExecutor.MDC_DATABASE);
+        if (database == null || !servers.containsKey(database)) {
+            return;
+        }
+
+        final String server = getServer(database);
+        synchronized (this) {
+            final ServerState state = getState(server);
+            state.addSample(StringUtils.defaultString(ctx.getRawSql()), elapsedTime);
+            if (state.isSlow()) {
+                decrease(server, state, "rising statement latency");
+            }
+        }
+    }
+
+    public synchronized int getLimit(final String server)
+    {
+        return getState(server).limit;
+    }
+
+    private void decrease(final String server, final ServerState state, final String reason)
+    {
+        final long now = System.nanoTime();
+        if (state.limit > 1 && now - state.lastDecrease > COOLDOWN_NANOS) {
+            state.limit = Math.max(1, state.limit / 2);
+            state.lastDecrease = now;
+            LOG.info("Lowering number of concurrent databases on {} to {} ({})", new Object[] { server, state.limit, reason });
+        }
+    }
+
+    private String getServer(final String database)
+    {
+        return StringUtils.defaultString(servers.get(database));
+    }
+
+    private ServerState getState(final String server)
+    {
+        ServerState state = states.get(server);
+        if (state == null) {
+            state = new ServerState(maxPerServer);
+            states.put(server, state);
+        }
+        return state;
+    }
+
+    /**
+     * Returns true if the exception or one of its causes reports a broken or refused connection (SQL state class 08,
+     * too many connections or a server that is starting up or shutting down).
+     */
+    public static boolean isConnectionFailure(final Throwable t)
+    {
+        for (Throwable cause = t; cause != null; cause = (cause.getCause() == cause) ? null : cause.getCause()) {
+            if (cause instanceof SQLException) {
+                final String sqlState = ((SQLException) cause).getSQLState();
+                if (sqlState != null && (sqlState.startsWith("08") || "53300".equals(sqlState) || "57P03".equals(sqlState))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static final class ServerState
+    {
+        private int limit;
+        private int inFlight = 0;
+        private long lastDecrease = System.nanoTime() - COOLDOWN_NANOS;
+
+        private final Map<String, StatementLatency> latencies = Maps.newHashMap();
+        /** Number of statements with enough samples, and how many of them are slow. */
+        private int judged = 0;
+        private int slow = 0;
+
+        private ServerState(final int limit)
+        {
+            this.limit = limit;
+        }
+
+        private void addSample(final String statement, final long elapsedTime)
+        {
+            StatementLatency latency = latencies.get(statement);
+            if (latency == null) {
+                latency = new StatementLatency();
+                latencies.put(statement, latency);
+            }
+
+            final boolean wasJudged = latency.isJudged();
+            final boolean wasSlow = latency.isSlow();
+            latency.addSample(elapsedTime);
+
+            if (!wasJudged && latency.isJudged()) {
+                judged++;
+            }
+            if (wasSlow != latency.isSlow()) {
+                slow += wasSlow ? -1 : 1;
+            }
+        }
+
+        private boolean isSlow()
+        {
+            return slow > 0 && slow * 2 >= judged;
+        }
+    }
+
+    private static final class StatementLatency
+    {
+        private int samples = 0;
+        private double average = 0.0;
+        private double baseline = Double.MAX_VALUE;
+
+        private void addSample(final long elapsedTime)
+        {
+            average = (samples == 0) ? elapsedTime : (ALPHA * elapsedTime + (1.0 - ALPHA) * average);
+            samples++;
+            if (samples >= MIN_SAMPLES) {
+                baseline = Math.min(baseline, average);
+            }
+        }
+
+        private boolean isJudged()
+        {
+            return samples >= MIN_SAMPLES;
+        }
+
+        private boolean isSlow()
+        {
+            return isJudged() && average > baseline * LATENCY_FACTOR;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.nesscomputing.migratory.mojo.database.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * Stores the rendered status report of a database together with the fingerprint that it was
+ * computed for. A report is only returned if the fingerprint still matches.
+ */
+public class StatusCache
+{
+    private static final Logger LOG = LoggerFactory.getLogger(StatusCache.class);
+
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String LINES = "lines";
+    private static final String LINE = "line.";
+
+    private final File cacheDir;
+
+    public StatusCache(final File cacheDir)
+    {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Returns the cached report lines for the key, or null if there are none or they were computed for a different fingerprint.
+     */
+    public List<String> get(final String key, final String fingerprint)
+    {
+        final File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        final Properties properties = new Properties();
+        InputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            properties.load(is);
+        }
+        catch (IOException ioe) {
+            LOG.warn("Could not read status cache {}: {}", file, ioe);
+            return null;
+        }
+        finally {
+            Closeables.closeQuietly(is);
+        }
+
+        if (!fingerprint.equals(properties.getProperty(FINGERPRINT))) {
+            return null;
+        }
+
+        final int count = Integer.parseInt(properties.getProperty(LINES, "0"), 10);
+        final List<String> lines = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            final String line = properties.getProperty(LINE + i);
+            if (line == null) {
+                return null;
+            }
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    public void put(final String key, final String fingerprint, final List<String> lines)
+    {
+        final Properties properties = new Properties();
+        properties.setProperty(FINGERPRINT, fingerprint);
+        properties.setProperty(LINES, Integer.toString(lines.size()));
+        for (int i = 0; i < lines.size(); i++) {
+            properties.setProperty(LINE + i, lines.get(i));
+        }
+
+        final File file = getFile(key);
+        OutputStream os = null;
+        try {
+            Files.createParentDirs(file);
+            final File tmpFile = File.createTempFile("status", ".tmp", file.getParentFile());
+            os = new FileOutputStream(tmpFile);
+            properties.store(os, key);
+            os.close();
+            os = null;
+            Files.move(tmpFile, file);
+        }
+        catch (IOException ioe) {
+            LOG.warn("Could not write status cache {}: {}", file, ioe);
+        }
+        finally {
+            Closeables.closeQuietly(os);
+        }
+    }
+
+    private File getFile(final String key)
+    {
+        return new File(cacheDir, Hashing.sha1().hashBytes(key.getBytes(Charsets.UTF_8)).toString() + ".status");
+    }
+}
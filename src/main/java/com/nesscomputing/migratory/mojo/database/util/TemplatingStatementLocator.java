@@ -2,6 +2,10 @@ package com.nesscomputing.migratory.mojo.database.util;
 
 import java.io.StringReader;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import org.antlr.stringtemplate.StringTemplate;
 import org.antlr.stringtemplate.StringTemplateGroup;
@@ -12,6 +16,9 @@ import org.skife.jdbi.v2.tweak.StatementLocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
 import com.google.common.io.Resources;
 import com.nesscomputing.migratory.loader.LoaderManager;
 
@@ -19,13 +26,28 @@ public class TemplatingStatementLocator implements StatementLocator
 {
     private static final Logger LOG = LoggerFactory.getLogger(TemplatingStatementLocator.class);
 
+    // The template files are loaded from the class path and never change while the JVM runs, so parsing
+    // them once is sufficient. Both template caches are shared between all locator instances.
+    private static final ConcurrentMap<String, StringTemplate> TEMPLATES = Maps.newConcurrentMap();
+    private static final ConcurrentMap<String, StringTemplateGroup> TEMPLATE_GROUPS = Maps.newConcurrentMap();
+
     private final LoaderManager loaderManager;
     private final String prefix;
+    private final MetricsCollector metricsCollector;
+
+    // Rendered SQL of this locator, keyed by statement name and template attributes.
+    private final Cache<List<Object>, String> renderedSql = CacheBuilder.newBuilder().maximumSize(1000).build();
 
     public TemplatingStatementLocator(final String prefix, final LoaderManager loaderManager)
+    {
+        this(prefix, loaderManager, new MetricsCollector());
+    }
+
+    public TemplatingStatementLocator(final String prefix, final LoaderManager loaderManager, final MetricsCollector metricsCollector)
     {
         this.prefix = prefix;
         this.loaderManager = loaderManager;
+        this.metricsCollector = metricsCollector;
     }
 
     @Override
@@ -36,41 +58,104 @@ public class TemplatingStatementLocator implements StatementLocator
         }
 
         if (statementName.charAt(0) == '#') {
+            final Map<String, Object> attributes = context.getAttributes();
+            final List<Object> cacheKey = isCacheable(attributes) ? Arrays.<Object>asList(statementName, Maps.newHashMap(attributes)) : null;
+
+            if (cacheKey != null) {
+                final String sql = renderedSql.getIfPresent(cacheKey);
+                if (sql != null) {
+                    LOG.trace("SQL (cached): {}", sql);
+                    return sql;
+                }
+            }
+
+            final long startTime = System.nanoTime();
+
             // Multiple templates can be in a string template group. In that case, the name is #<template-group:<statement name>
             final String [] statementNames = StringUtils.split(statementName.substring(1), ":");
 
             final String location = prefix + statementNames[0] + ".st";
 
-            LOG.trace("Loading SQL: {}", location);
-            final URL locationUrl = Resources.getResource(this.getClass(), location);
-
-            if (locationUrl == null) {
-                throw new IllegalArgumentException("Location '" + location + "' does not exist!");
-            }
-            final String contents = loaderManager.loadFile(locationUrl.toURI());
-
+            final StringTemplate template;
             if (statementNames.length == 1) {
-                final StringTemplate template = new StringTemplate(contents, AngleBracketTemplateLexer.class);
-                template.setAttributes(context.getAttributes());
-                final String sql = template.toString();
-
-                LOG.trace("SQL: {}", sql);
-                return sql;
+                template = getTemplate(location).getInstanceOf();
             }
             else {
-                final StringTemplateGroup group = new StringTemplateGroup(new StringReader(contents), AngleBracketTemplateLexer.class);
-                LOG.trace("Found {} in {}", group.getTemplateNames(), locationUrl);
+                template = getTemplateGroup(location).getInstanceOf(statementNames[1]);
+            }
+
+            template.setAttributes(attributes);
+            final String sql = template.toString();
 
-                final StringTemplate template = group.getInstanceOf(statementNames[1]);
-                template.setAttributes(context.getAttributes());
-                final String sql = template.toString();
+            metricsCollector.record(MetricsCollector.TEMPLATE, statementName, System.nanoTime() - startTime);
+            LOG.trace("SQL: {}", sql);
 
-                LOG.trace("SQL: {}", sql);
-                return sql;
+            if (cacheKey != null) {
+                renderedSql.put(cacheKey, sql);
             }
+            return sql;
         }
         else {
             return statementName;
         }
     }
+
+    private StringTemplate getTemplate(final String location) throws Exception
+    {
+        StringTemplate template = TEMPLATES.get(location);
+        if (template == null) {
+            template = new StringTemplate(loadContents(location), AngleBracketTemplateLexer.class);
+            final StringTemplate existing = TEMPLATES.putIfAbsent(location, template);
+            if (existing != null) {
+                template = existing;
+            }
+        }
+        return template;
+    }
+
+    private StringTemplateGroup getTemplateGroup(final String location) throws Exception
+    {
+        StringTemplateGroup group = TEMPLATE_GROUPS.get(location);
+        if (group == null) {
+            group = new StringTemplateGroup(new StringReader(loadContents(location)), AngleBracketTemplateLexer.class);
+            LOG.trace("Found {} in {}", group.getTemplateNames(), location);
+
+            final StringTemplateGroup existing = TEMPLATE_GROUPS.putIfAbsent(location, group);
+            if (existing != null) {
+                group = existing;
+            }
+        }
+        return group;
+    }
+
+    private String loadContents(final String location) throws Exception
+    {
+        LOG.trace("Loading SQL: {}", location);
+        final URL locationUrl = Resources.getResource(this.getClass(), location);
+
+        if (locationUrl == null) {
+            throw new IllegalArgumentException("Location '" + location + "' does not exist!");
+        }
+        return loaderManager.loadFile(locationUrl.toURI());
+    }
+
+    /**
+     * Only statements with simple attribute values are cached, everything else may not have
+     * a stable equals/hashCode or could be changed after rendering. Statements with a password
+     * are never cached, so the password is not kept in memory longer than necessary.
+     */
+    private static boolean isCacheable(final Map<String, Object> attributes)
+    {
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            if (StringUtils.containsIgnoreCase(attribute.getKey(), "password")) {
+                return false;
+            }
+
+            final Object value = attribute.getValue();
+            if (value != null && !(value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Enum)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }